@@ -0,0 +1,160 @@
+package tensor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.xml.stream.XMLStreamException;
+
+import tensor.tree.AlberoCompatto;
+import tensor.tree.ArchivioValutazioni;
+import tensor.tree.Matrice;
+import tensor.tree.MatriceIntera;
+import tensor.tree.MatriceSparsa;
+import tensor.tree.NodoTensore;
+import tensor.utility.MathUtility.AlgoritmoPerDeterminante;
+import tensor.utility.ParserXML;
+
+/**
+ * Classe Main dell'esecuzione di addestramento, avviata da Main con l'argomento "-addestramento".
+ *
+ * L'esecuzione percorre tutti i punti critici del programma: le modalità di lettura di ParserXML sui file
+ * indicati e ogni algoritmo per il determinante, su matrici di tutte le strutture e rappresentazioni.
+ * In questo modo vengono caricate e inizializzate tutte le classi che servono a un'esecuzione reale, e la JVM
+ * (avviata con -XX:ArchiveClassesAtExit) può salvarle in un archivio CDS da cui partiranno le esecuzioni successive.
+ *
+ * @author Michele Dusi <michele.dusi.it@ieee.org>
+ *
+ */
+public final class Addestramento {
+
+	private static final int ITERAZIONI = 3; // Alcune ripetizioni, perché vengano caricate anche le classi che la JVM genera solo dopo le prime invocazioni.
+	private static final int [] DIMENSIONI = {1, 2, 3, 5, 7, 16, 40, 100};
+	private static final int MAX_VALORE = 100; // Come nei file di input, gli elementi sono interi in [0, 100].
+	private static final long SEME = 17;
+	
+	// Forme delle matrici generate
+	private static final int FORMA_DIAGONALE = 0;
+	private static final int FORMA_TRIANGOLARE = 1;
+	private static final int FORMA_A_BANDA = 2;
+	private static final int FORMA_SIMMETRICA = 3;
+	private static final int FORMA_GENERICA = 4;
+
+	private static final String LOG_INIZIO = "Addestramento su %d file e %d matrici generate...";
+	private static final String LOG_FINE = "Addestramento terminato.";
+
+	private Addestramento() {};
+
+	/**
+	 * Esegue l'addestramento.
+	 *
+	 * @param args File di input rappresentativi (quelli inesistenti vengono ignorati).
+	 */
+	public static void main(String[] args) throws IOException, XMLStreamException {
+		List<String> file = new ArrayList<String>();
+		for (String nome_file : args) {
+			if (new File(nome_file).isFile()) {
+				file.add(nome_file);
+			}
+		}
+		List<Matrice> matrici = generaMatrici(new Random(SEME));
+		System.out.println(String.format(LOG_INIZIO, file.size(), matrici.size()));
+
+		for (int i = 0; i < ITERAZIONI; i++) {
+			for (String nome_file : file) {
+				esercitaLettura(nome_file);
+			}
+			for (Matrice m : matrici) {
+				esercitaDeterminanti(m);
+			}
+		}
+		System.out.println(LOG_FINE);
+	}
+
+	/**
+	 * Legge il file in tutte le modalità e ne valuta l'albero in tutti i modi disponibili in locale.
+	 */
+	private static void esercitaLettura(String nome_file) throws IOException, XMLStreamException {
+		NodoTensore albero = ParserXML.leggiFile(nome_file);
+		albero.getListaIndici();
+		albero.getListaUnita();
+		albero.getImpronta();
+		AlberoCompatto.da(albero).getListaUnita();
+
+		NodoTensore albero_pigro = ParserXML.leggiFileLazy(nome_file);
+		new ArchivioValutazioni().getListaUnita(albero_pigro);
+		albero_pigro.getListaIndici();
+
+		ParserXML.leggiFilePipeline(nome_file).getListaUnita();
+	}
+
+	/**
+	 * Calcola il determinante della matrice con ogni algoritmo applicabile, in forma logaritmica e
+	 * attraverso il prodotto con se stessa.
+	 */
+	private static void esercitaDeterminanti(Matrice m) {
+		for (AlgoritmoPerDeterminante algo : AlgoritmoPerDeterminante.values()) {
+			if (m.getDimensione() >= AlgoritmoPerDeterminante.getMinDimMatrice(algo) &&
+					m.getDimensione() <= AlgoritmoPerDeterminante.getMaxDimMatrice(algo)) {
+				m.calcolaDeterminante(algo);
+			}
+		}
+		m.calcolaLogDeterminante();
+		m.moltiplica(m);
+	}
+
+	/**
+	 * Genera, per ogni dimensione, matrici di tutte le strutture riconosciute (diagonale, triangolare,
+	 * a banda, simmetrica definita positiva, generica) in tutte le rappresentazioni (double, intera, sparsa).
+	 */
+	private static List<Matrice> generaMatrici(Random random) {
+		List<Matrice> matrici = new ArrayList<Matrice>();
+		for (int dim : DIMENSIONI) {
+			for (int forma = FORMA_DIAGONALE; forma <= FORMA_GENERICA; forma++) {
+				List<List<Double>> elementi = new ArrayList<List<Double>>();
+				for (int i = 0; i < dim; i++) {
+					List<Double> riga = new ArrayList<Double>();
+					for (int j = 0; j < dim; j++) {
+						riga.add((double) generaElemento(random, forma, i, j, dim));
+					}
+					elementi.add(riga);
+				}
+				if (forma == FORMA_SIMMETRICA) {
+					// Rendo la matrice simmetrica
+					for (int i = 0; i < dim; i++) {
+						for (int j = 0; j < i; j++) {
+							elementi.get(i).set(j, elementi.get(j).get(i));
+						}
+					}
+				}
+				matrici.add(new Matrice(elementi));
+				matrici.add(new MatriceIntera(elementi, MatriceIntera.TipoElementi.BYTE));
+				matrici.add(new MatriceSparsa(elementi));
+			}
+			matrici.add(Matrice.generaCasuale(dim));
+		}
+		return matrici;
+	}
+
+	/**
+	 * Genera l'elemento (i, j) di una matrice della forma indicata. Le matrici simmetriche hanno la diagonale
+	 * dominante, per cui sono definite positive (dopo la simmetrizzazione) e percorrono l'algoritmo di Cholesky.
+	 */
+	private static int generaElemento(Random random, int forma, int i, int j, int dim) {
+		switch (forma) {
+		case FORMA_DIAGONALE:
+			return (i == j) ? 1 + random.nextInt(MAX_VALORE) : 0;
+		case FORMA_TRIANGOLARE:
+			return (i <= j) ? 1 + random.nextInt(MAX_VALORE) : 0;
+		case FORMA_A_BANDA:
+			return (Math.abs(i - j) <= 1) ? 1 + random.nextInt(MAX_VALORE) : 0;
+		case FORMA_SIMMETRICA:
+			return (i == j) ? MAX_VALORE : random.nextInt(MAX_VALORE / dim + 1);
+		default:
+			return random.nextInt(MAX_VALORE + 1);
+		}
+	}
+
+}
@@ -1,10 +1,18 @@
 package tensor;
 
+import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import javax.xml.stream.XMLStreamException;
 
+import tensor.distribuito.Coordinatore;
+import tensor.profilazione.EventoDeterminante;
+import tensor.profilazione.EventoStampaRisultati;
+import tensor.tree.GestoreMemoria;
 import tensor.tree.Matrice;
 import tensor.tree.NodoTensore;
 import tensor.utility.MathUtility.AlgoritmoPerDeterminante;
@@ -25,23 +33,206 @@ public class Main {
 	private static final String STRING_TEMPI = "Tempo medio con l'algoritmo \"%s\":";
 	private static final String STRING_TEMPI_DIM = "  Matrici %dx%d: %.9f secondi.";
 	private static final String STRING_INPUT_TITLE = "Calcolo per il file: \"%s\"";
+	
+	private static final String ARG_DISTRIBUITO = "-distribuito"; // Seguito (opzionalmente) dal numero di processi di calcolo.
+	private static final String ARG_MEMORIA = "-memoria"; // Seguito dal budget di memoria per le matrici, in MB.
+	private static final String ARG_PIPELINE = "-pipeline"; // Seguito (opzionalmente) dal numero di thread di calcolo.
+	private static final String ARG_ADDESTRAMENTO = "-addestramento"; // Seguito (opzionalmente) dal file dell'archivio CDS.
+	
+	/*
+	 * Modalità alternative del modulo 1: ognuna legge i file in un modo diverso (pigro, con budget, in pipeline),
+	 * per cui non possono essere combinate.
+	 */
+	private static final String [] ARG_MODALITA = {ARG_DISTRIBUITO, ARG_MEMORIA, ARG_PIPELINE};
+	
+	private static final String STRING_USO = "Uso: java tensor.Main [%s [numero processi] | %s MB | %s [numero thread] | %s [archivio]]";
+	private static final String ERRORE_OPZIONI_INCOMPATIBILI = "Le opzioni %s e %s non possono essere utilizzate insieme.";
+	private static final String ERRORE_VALORE_NON_VALIDO = "L'opzione %s richiede un numero intero non negativo.";
+	private static final String ERRORE_VALORE_NON_POSITIVO = "L'opzione %s richiede un numero intero positivo.";
+	
+	private static final String ARCHIVIO_DEFAULT = "tensor.jsa";
+	private static final String PERCORSO_JAVA = "bin" + File.separator + "java";
+	private static final String OPZIONE_CLASSPATH = "-cp";
+	private static final String OPZIONE_CREA_ARCHIVIO = "-XX:ArchiveClassesAtExit=";
+	private static final String OPZIONE_USA_ARCHIVIO = "-XX:SharedArchiveFile=";
+	private static final String STRING_ARCHIVIO_CREATO = "Archivio creato. Per utilizzarlo avviare il programma con l'opzione della JVM %s%s";
+	private static final String EXCEPTION_ADDESTRAMENTO_FALLITO = "L'addestramento è terminato con codice %d.";
+	private static final String ERRORE_VERSIONE_JAVA = "La creazione dell'archivio CDS (%s) richiede Java %d o successivo, ma la JVM in uso è la versione %s.";
+	private static final String ERRORE_CLASSPATH_CARTELLA = "L'archivio CDS può contenere solo classi lette da file JAR, ma il classpath contiene la cartella \"%s\".\n"
+			+ "Creare prima il JAR (ad esempio \"jar cf tensor.jar -C bin .\") e avviare il programma con \"-cp tensor.jar\".";
+	private static final int VERSIONE_MINIMA_CDS = 13; // Prima versione che supporta gli archivi dinamici.
+	private static final String PROPRIETA_VERSIONE_JAVA = "java.specification.version";
+	private static final String PREFISSO_VERSIONE_LEGACY = "1."; // Fino a Java 8 la versione è nella forma "1.x".
+	
+	private static final long BYTE_PER_MB = 1 << 20;
 
 	private static final int MAX_DIM_MATRICE = 100; // E' la massima dimensione per cui viene effettuato il calcolo dei tempi (vedi modulo 2).
 	private static final double NANOS_PER_SECONDS = 1E9;
 	
 	/**
 	 * Metodo che gestisce l'esecuzione e il flusso del programma.
+	 * Con l'argomento "-distribuito [numero processi]" il modulo 1 viene eseguito distribuendo il calcolo
+	 * su più processi della stessa macchina (vedi Coordinatore).
+	 * Con l'argomento "-memoria MB" il modulo 1 mantiene in memoria al più il numero indicato di MB di matrici,
+	 * spostando le altre su disco (vedi GestoreMemoria).
+	 * Con l'argomento "-pipeline [numero thread]" il modulo 1 legge i file sovrapponendo la lettura al calcolo
+	 * dei determinanti, svolto dal numero indicato di thread (vedi ParserXML.leggiFilePipeline).
+	 * Con l'argomento "-addestramento [archivio]" il programma esegue invece un'esecuzione di addestramento
+	 * (vedi Addestramento) che salva le classi caricate in un archivio CDS; le esecuzioni successive avviate
+	 * con "-XX:SharedArchiveFile=archivio" partono dall'archivio e riducono il tempo di avvio.
 	 */
-	public static void main(String[] args) throws FileNotFoundException, XMLStreamException {
+	public static void main(String[] args) throws IOException, XMLStreamException {
+		int processi = 0;
+		int thread_pipeline = 0;
+		long budget_memoria = -1;
+		String [] incompatibili = cercaOpzioniIncompatibili(args);
+		if (args.length > 0 && args[0].equals(ARG_ADDESTRAMENTO)) {
+			creaArchivio((args.length > 1) ? args[1] : ARCHIVIO_DEFAULT);
+			return;
+		} else if (incompatibili != null) {
+			erroreUso(String.format(ERRORE_OPZIONI_INCOMPATIBILI, incompatibili[0], incompatibili[1]));
+			return;
+		} else if (args.length > 0 && args[0].equals(ARG_PIPELINE)) {
+			thread_pipeline = leggiInteroPositivo(args, Runtime.getRuntime().availableProcessors());
+			if (thread_pipeline <= 0) {
+				erroreUso(String.format(ERRORE_VALORE_NON_POSITIVO, ARG_PIPELINE));
+				return;
+			}
+		} else if (args.length > 0 && args[0].equals(ARG_DISTRIBUITO)) {
+			processi = leggiInteroPositivo(args, Runtime.getRuntime().availableProcessors());
+			if (processi <= 0) {
+				erroreUso(String.format(ERRORE_VALORE_NON_POSITIVO, ARG_DISTRIBUITO));
+				return;
+			}
+		} else if (args.length > 0 && args[0].equals(ARG_MEMORIA)) {
+			try {
+				budget_memoria = (args.length > 1) ? Long.parseLong(args[1]) * BYTE_PER_MB : -1;
+			} catch (NumberFormatException e) {
+				budget_memoria = -1;
+			}
+			if (budget_memoria < 0) {
+				erroreUso(String.format(ERRORE_VALORE_NON_VALIDO, ARG_MEMORIA));
+				return;
+			}
+		}
+		
 		// Eseguo entrambi i moduli per i file di input.
 		for (String input : INPUTS) {
 			System.out.println(String.format(STRING_INPUT_TITLE, input));
-			modulo1(input);
+			if (processi > 0) {
+				modulo1Distribuito(input, processi);
+			} else if (thread_pipeline > 0) {
+				modulo1Pipeline(input, thread_pipeline);
+			} else if (budget_memoria >= 0) {
+				modulo1ConBudget(input, budget_memoria);
+			} else {
+				modulo1(input);
+			}
 			modulo2(input);
 		}
 
 	}
 	
+	/**
+	 * Segnala un errore negli argomenti del programma, seguito dalla sintassi corretta.
+	 */
+	private static void erroreUso(String errore) {
+		System.err.println(errore);
+		System.err.println(String.format(STRING_USO, ARG_DISTRIBUITO, ARG_MEMORIA, ARG_PIPELINE, ARG_ADDESTRAMENTO));
+	}
+	
+	/**
+	 * Restituisce le prime due modalità del modulo 1 richieste insieme negli argomenti, oppure null.
+	 */
+	private static String [] cercaOpzioniIncompatibili(String [] args) {
+		List<String> argomenti = Arrays.asList(args);
+		for (int i = 0; i < ARG_MODALITA.length; i++) {
+			for (int j = i + 1; j < ARG_MODALITA.length; j++) {
+				if (argomenti.contains(ARG_MODALITA[i]) && argomenti.contains(ARG_MODALITA[j])) {
+					return new String [] {ARG_MODALITA[i], ARG_MODALITA[j]};
+				}
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Legge il valore facoltativo che segue l'opzione (il primo argomento), che deve essere un intero positivo.
+	 * 
+	 * @param args Argomenti del programma.
+	 * @param predefinito Valore da utilizzare se l'opzione non è seguita da alcun valore.
+	 * @return Valore letto, oppure 0 se non è un intero positivo.
+	 */
+	private static int leggiInteroPositivo(String [] args, int predefinito) {
+		if (args.length < 2) {
+			return predefinito;
+		}
+		try {
+			return Math.max(Integer.parseInt(args[1]), 0);
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+	
+	/**
+	 * Avvia l'esecuzione di addestramento in una nuova JVM, che al termine salva nell'archivio tutte le classi
+	 * caricate. L'archivio va creato con la stessa JVM e lo stesso classpath con cui verrà utilizzato.
+	 * Il classpath deve essere composto da soli file JAR, perché CDS non archivia le classi lette da cartelle.
+	 * Se la JVM in uso non supporta gli archivi dinamici, o il classpath contiene una cartella, l'addestramento
+	 * non viene avviato e viene segnalato l'errore.
+	 * 
+	 * @param archivio File dell'archivio da creare.
+	 * @throws IllegalStateException Se l'esecuzione di addestramento non termina correttamente.
+	 */
+	private static void creaArchivio(String archivio) throws IOException, IllegalStateException {
+		String versione = System.getProperty(PROPRIETA_VERSIONE_JAVA);
+		if (getVersionePrincipale(versione) < VERSIONE_MINIMA_CDS) {
+			System.err.println(String.format(ERRORE_VERSIONE_JAVA, OPZIONE_CREA_ARCHIVIO, VERSIONE_MINIMA_CDS, versione));
+			return;
+		}
+		String classpath = System.getProperty("java.class.path");
+		for (String elemento : classpath.split(File.pathSeparator)) {
+			if (new File(elemento).isDirectory()) {
+				// Le classi della cartella non verrebbero archiviate, e l'archivio non porterebbe alcun vantaggio
+				System.err.println(String.format(ERRORE_CLASSPATH_CARTELLA, elemento));
+				return;
+			}
+		}
+		
+		List<String> comando = new ArrayList<String>();
+		comando.add(System.getProperty("java.home") + File.separator + PERCORSO_JAVA);
+		comando.add(OPZIONE_CREA_ARCHIVIO + archivio);
+		comando.add(OPZIONE_CLASSPATH);
+		comando.add(classpath);
+		comando.add(Addestramento.class.getName());
+		comando.addAll(Arrays.asList(INPUTS));
+		
+		ProcessBuilder builder = new ProcessBuilder(comando);
+		builder.inheritIO();
+		int codice;
+		try {
+			codice = builder.start().waitFor();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		}
+		if (codice != 0) {
+			throw new IllegalStateException(String.format(EXCEPTION_ADDESTRAMENTO_FALLITO, codice));
+		}
+		System.out.println(String.format(STRING_ARCHIVIO_CREATO, OPZIONE_USA_ARCHIVIO, archivio));
+	}
+	
+	/**
+	 * Restituisce il numero principale di una versione di Java ("1.8" -> 8, "17" -> 17).
+	 */
+	private static int getVersionePrincipale(String versione) {
+		if (versione.startsWith(PREFISSO_VERSIONE_LEGACY)) {
+			versione = versione.substring(PREFISSO_VERSIONE_LEGACY.length());
+		}
+		int fine = versione.indexOf('.');
+		return Integer.parseInt((fine < 0) ? versione : versione.substring(0, fine));
+	}
+	
 	/**
 	 * Implementazione del modulo 1.
 	 */
@@ -49,16 +240,67 @@ public class Main {
 		// Lettura da file
 		NodoTensore albero = ParserXML.leggiFile(file);
 		
-		// Stampo elenco degli indici
+		// Stampo gli elenchi degli indici e delle Unità di Tensore
+		stampaRisultati(file, albero.getListaIndici(), albero.getListaUnita());
+	}
+	
+	/**
+	 * Implementazione del modulo 1 con un budget di memoria per le matrici.
+	 * Le matrici in eccesso sono scritte su un file temporaneo, cancellato al termine.
+	 */
+	private static void modulo1ConBudget(String file, long budget) throws IOException, XMLStreamException {
+		GestoreMemoria gestore = new GestoreMemoria(budget);
+		try {
+			// Lettura da file
+			NodoTensore albero = ParserXML.leggiFile(file, gestore);
+			
+			// Stampo gli elenchi degli indici e delle Unità di Tensore
+			stampaRisultati(file, albero.getListaIndici(), albero.getListaUnita());
+		} finally {
+			gestore.close();
+		}
+	}
+	
+	/**
+	 * Implementazione del modulo 1 con il calcolo distribuito su più processi.
+	 * Il file è letto in modalità pigra, così che i determinanti vengano calcolati solo dai processi di calcolo.
+	 */
+	private static void modulo1Distribuito(String file, int processi) throws IOException {
+		// Lettura da file e valutazione
+		NodoTensore albero = ParserXML.leggiFileLazy(file);
+		Coordinatore.Risultato risultato = new Coordinatore(processi).valuta(albero);
+		
+		// Stampo gli elenchi degli indici e delle Unità di Tensore
+		stampaRisultati(file, risultato.getListaIndici(), risultato.getListaUnita());
+	}
+	
+	/**
+	 * Implementazione del modulo 1 con la lettura in pipeline: i determinanti sono calcolati da un gruppo
+	 * di thread mentre il file viene letto.
+	 */
+	private static void modulo1Pipeline(String file, int thread) throws FileNotFoundException, XMLStreamException {
+		// Lettura da file e calcolo dei determinanti
+		NodoTensore albero = ParserXML.leggiFilePipeline(file, thread);
+		
+		// Stampo gli elenchi degli indici e delle Unità di Tensore
+		stampaRisultati(file, albero.getListaIndici(), albero.getListaUnita());
+	}
+	
+	/**
+	 * Stampa gli elenchi degli indici dei Tensori e delle Unità di Tensore dei nodi.
+	 */
+	private static void stampaRisultati(String file, List<String> indici, List<String> unita) {
+		EventoStampaRisultati evento = new EventoStampaRisultati(file, indici.size() + unita.size());
+		evento.begin();
 		System.out.println(INDICI_TENSORI);
-		for (String s : albero.getListaIndici()) {
+		for (String s : indici) {
 			System.out.println(s);
 		}
-		// Stampo elenco delle Unità di Tensore
 		System.out.println(UNITA_NODI);
-		for (String s : albero.getListaUnita()) {
+		for (String s : unita) {
 			System.out.println(s);
 		}
+		evento.commit();
 	}
 	
 	/**
@@ -71,7 +313,6 @@ public class Main {
 		NodoTensore albero = ParserXML.leggiFile(file);
 		
 		// Preparazione delle variabili ausiliarie per il calcolo dei tempi
-		long [][] start_tempi = new long[AlgoritmoPerDeterminante.values().length][MAX_DIM_MATRICE];
 		long [][] media_tempi = new long[AlgoritmoPerDeterminante.values().length][MAX_DIM_MATRICE];
 		// Preparo il conteggio delle matrici per dimensione
 		int [] conteggio_matrici = new int [MAX_DIM_MATRICE];
@@ -90,11 +331,10 @@ public class Main {
 			for (int a = 0; a < AlgoritmoPerDeterminante.values().length; a++) {
 				AlgoritmoPerDeterminante algo = AlgoritmoPerDeterminante.values()[a];
 				
-				start_tempi[a][matr.getDimensione() - 1] = System.nanoTime();
 				if (matr.getDimensione() >= AlgoritmoPerDeterminante.getMinDimMatrice(AlgoritmoPerDeterminante.values()[a]) &&
 						matr.getDimensione() <= AlgoritmoPerDeterminante.getMaxDimMatrice(AlgoritmoPerDeterminante.values()[a])) {
-					matr.calcolaDeterminante(algo);
-					media_tempi[a][matr.getDimensione() - 1] += System.nanoTime() - start_tempi[a][matr.getDimensione() - 1];
+					// Il tempo è misurato all'interno dell'evento JFR, che non incide quindi sulla misura
+					media_tempi[a][matr.getDimensione() - 1] += EventoDeterminante.misura(matr, algo);
 				}
 			}
 		}
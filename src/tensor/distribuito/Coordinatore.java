@@ -0,0 +1,441 @@
+package tensor.distribuito;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import tensor.tree.NodoTensore;
+import tensor.tree.SerializzatoreAlbero;
+import tensor.tree.Tensore;
+
+/**
+ * Classe che valuta un albero di NodiTensore distribuendo il lavoro su più processi Java della stessa macchina.
+ *
+ * I sottoalberi figli della radice sono suddivisi in tanti gruppi quanti sono i processi di calcolo,
+ * bilanciando il costo stimato (somma dei cubi delle dimensioni delle matrici, note senza leggerle): ogni
+ * sottoalbero, dal più costoso, è assegnato al gruppo con il costo complessivo minore. Ogni gruppo è inviato
+ * ad un processo {@link Lavoratore} attraverso un socket locale, un sottoalbero alla volta: ciascun
+ * sottoalbero è serializzato direttamente sul socket solo quando viene inviato, e il successivo è inviato
+ * solo dopo aver letto il risultato del precedente. Durante il calcolo il processo segnala periodicamente di
+ * essere attivo; se fallisce o resta in silenzio per TIMEOUT_ATTIVITA, viene terminato e sostituito da uno
+ * nuovo, e i sottoalberi del gruppo non ancora valutati vengono ritentati.
+ * I risultati sono infine ricomposti nello stesso ordine della visita sequenziale dell'albero.
+ *
+ * @author Michele Dusi <michele.dusi.it@ieee.org>
+ *
+ */
+public final class Coordinatore {
+
+	private static final int MAX_TENTATIVI = 3;
+	private static final int TIMEOUT_CONNESSIONE = 30000; // Millisecondi di attesa per la connessione di un processo.
+	private static final int TIMEOUT_ATTIVITA = 60000; // Millisecondi senza segnali dopo i quali un processo è considerato bloccato.
+	private static final int DIM_BUFFER = 1 << 16;
+
+	private static final String PERCORSO_JAVA = "bin" + File.separator + "java";
+	private static final String OPZIONE_CLASSPATH = "-cp";
+
+	private static final String EXCEPTION_NUMERO_LAVORATORI = "Il numero di processi di calcolo deve essere positivo.";
+	private static final String EXCEPTION_TENTATIVI_ESAURITI = "Il gruppo di sottoalberi %s non è stato valutato dopo %d tentativi.";
+	private static final String EXCEPTION_VALUTAZIONE_INTERROTTA = "Valutazione distribuita interrotta.";
+	private static final String EXCEPTION_SEGNALE_INATTESO = "Segnale inatteso dal processo di calcolo: %d.";
+
+	private final int numero_lavoratori;
+
+	/**
+	 * Costruttore che definisce il numero di processi di calcolo da utilizzare.
+	 *
+	 * @param _numero_lavoratori Numero massimo di processi di calcolo.
+	 * @throws IllegalArgumentException Se il numero non è positivo.
+	 */
+	public Coordinatore(int _numero_lavoratori) throws IllegalArgumentException {
+		if (_numero_lavoratori <= 0) {
+			throw new IllegalArgumentException(EXCEPTION_NUMERO_LAVORATORI);
+		}
+		this.numero_lavoratori = _numero_lavoratori;
+	}
+
+	/**
+	 * Metodo che valuta l'albero distribuendo i sottoalberi della radice sui processi di calcolo.
+	 * Conviene fornire un albero letto in modalità pigra: le matrici vengono lette solo per essere inviate,
+	 * e i determinanti sono calcolati esclusivamente dai processi di calcolo.
+	 *
+	 * @param radice Radice dell'albero.
+	 * @return Indici e Unità di Tensore dell'albero.
+	 * @throws IOException Se un gruppo fallisce dopo tutti i tentativi.
+	 */
+	public Risultato valuta(NodoTensore radice) throws IOException {
+		if (radice instanceof Tensore) {
+			// Un Tensore radice non visita i figli per gli indici: lo valuto direttamente
+			return new Risultato(radice.getUnitaTensore(), radice.getListaIndici(), radice.getListaUnita());
+		}
+
+		// Stima del costo dei sottoalberi, senza leggerne le matrici
+		List<NodoTensore> figli = radice.getFigli();
+		long [] costi = new long [figli.size()];
+		for (int i = 0; i < figli.size(); i++) {
+			costi[i] = SerializzatoreAlbero.stimaCosto(figli.get(i));
+		}
+
+		// Valutazione dei gruppi in parallelo, un thread per processo di calcolo
+		ConcurrentLinkedQueue<Gruppo> coda = new ConcurrentLinkedQueue<Gruppo>(this.suddividi(costi));
+		RisultatoSottoalbero [] risultati = new RisultatoSottoalbero [figli.size()];
+		int numero_thread = Math.max(1, coda.size());
+		ExecutorService esecutore = Executors.newFixedThreadPool(numero_thread);
+		List<GestoreLavoratore> gestori = new ArrayList<GestoreLavoratore>(numero_thread);
+		try {
+			List<Future<Void>> esiti = new ArrayList<Future<Void>>(numero_thread);
+			for (int i = 0; i < numero_thread; i++) {
+				GestoreLavoratore gestore = new GestoreLavoratore(coda, figli, risultati);
+				gestori.add(gestore);
+				esiti.add(esecutore.submit(gestore));
+			}
+			for (Future<Void> esito : esiti) {
+				esito.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(EXCEPTION_VALUTAZIONE_INTERROTTA, e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			// Le letture dai socket non sono interrompibili: chiudo le connessioni e termino i processi rimasti
+			for (GestoreLavoratore gestore : gestori) {
+				gestore.interrompi();
+			}
+			esecutore.shutdownNow();
+		}
+
+		// Ricomposizione nell'ordine della visita sequenziale, con le regole di NodoTensore
+		double unita = 0;
+		List<String> lista_indici = new ArrayList<String>();
+		List<String> lista_unita = new ArrayList<String>();
+		for (RisultatoSottoalbero r : risultati) {
+			unita = radice.isRoot() ? Math.min(unita, r.unita) : Math.max(unita, r.unita);
+			lista_indici.addAll(r.lista_indici);
+		}
+		lista_unita.add(String.format(NodoTensore.INTRO_UNITA, radice.getLabel(), unita));
+		for (RisultatoSottoalbero r : risultati) {
+			lista_unita.addAll(r.lista_unita);
+		}
+		return new Risultato(unita, lista_indici, lista_unita);
+	}
+
+	/**
+	 * Suddivide i sottoalberi in gruppi di costo bilanciato: i sottoalberi sono considerati in ordine di costo
+	 * decrescente e ciascuno è assegnato al gruppo con il costo complessivo minore.
+	 *
+	 * @param costi Costo stimato di ciascun sottoalbero.
+	 * @return Gruppi non vuoti di indici di sottoalberi.
+	 */
+	private List<Gruppo> suddividi(final long [] costi) {
+		List<Integer> ordine = new ArrayList<Integer>(costi.length);
+		for (int i = 0; i < costi.length; i++) {
+			ordine.add(i);
+		}
+		Collections.sort(ordine, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Long.compare(costi[b], costi[a]);
+			}
+		});
+
+		int numero_gruppi = Math.min(this.numero_lavoratori, costi.length);
+		List<Gruppo> gruppi = new ArrayList<Gruppo>(numero_gruppi);
+		for (int g = 0; g < numero_gruppi; g++) {
+			gruppi.add(new Gruppo());
+		}
+		for (int i : ordine) {
+			Gruppo minimo = gruppi.get(0);
+			for (Gruppo g : gruppi) {
+				if (g.costo < minimo.costo) {
+					minimo = g;
+				}
+			}
+			minimo.sottoalberi.add(i);
+			minimo.costo += costi[i];
+		}
+		return gruppi;
+	}
+
+	/**
+	 * Classe che rappresenta un gruppo di sottoalberi da inviare insieme ad un processo di calcolo.
+	 */
+	private static final class Gruppo {
+
+		final List<Integer> sottoalberi = new ArrayList<Integer>();
+		long costo;
+		int tentativi;
+	}
+
+	/**
+	 * Classe che gestisce un processo di calcolo: lo avvia, gli invia i gruppi prelevati dalla coda e
+	 * ne raccoglie i risultati. Se il processo fallisce (o non dà segni di attività per TIMEOUT_ATTIVITA) viene
+	 * terminato, il gruppo torna in coda e per il gruppo successivo viene avviato un nuovo processo.
+	 * La connessione e il processo possono essere chiusi anche da un altro thread (vedi {@link #interrompi()}),
+	 * per cui sono modificati solo in modo sincronizzato.
+	 */
+	private static final class GestoreLavoratore implements Callable<Void> {
+
+		private final ConcurrentLinkedQueue<Gruppo> coda;
+		private final List<NodoTensore> sottoalberi;
+		private final RisultatoSottoalbero [] risultati;
+
+		private Process processo;
+		private ServerSocket server;
+		private Socket socket;
+		private DataInputStream in;
+		private DataOutputStream out;
+		private volatile boolean interrotto;
+
+		GestoreLavoratore(ConcurrentLinkedQueue<Gruppo> _coda, List<NodoTensore> _sottoalberi, RisultatoSottoalbero [] _risultati) {
+			this.coda = _coda;
+			this.sottoalberi = _sottoalberi;
+			this.risultati = _risultati;
+		}
+
+		@Override
+		public Void call() throws IOException {
+			try {
+				Gruppo gruppo = this.coda.poll();
+				while (gruppo != null && !this.interrotto) {
+					try {
+						this.valutaGruppo(gruppo);
+					} catch (IOException e) {
+						this.termina();
+						gruppo.tentativi++;
+						if (gruppo.tentativi >= MAX_TENTATIVI) {
+							throw new IOException(String.format(EXCEPTION_TENTATIVI_ESAURITI, gruppo.sottoalberi, gruppo.tentativi), e);
+						}
+						this.coda.add(gruppo);
+					}
+					gruppo = this.coda.poll();
+				}
+				synchronized (this) {
+					if (this.out != null) {
+						this.out.writeInt(Lavoratore.SEGNALE_FINE);
+						this.out.flush();
+					}
+				}
+			} finally {
+				this.termina();
+			}
+			return null;
+		}
+
+		/**
+		 * Invia al processo di calcolo (avviandolo se necessario) i sottoalberi del gruppo non ancora valutati,
+		 * uno alla volta, leggendo il risultato di ciascuno prima di inviare il successivo.
+		 */
+		private void valutaGruppo(Gruppo gruppo) throws IOException {
+			if (this.socket == null) {
+				this.avvia();
+			}
+			DataInputStream in;
+			DataOutputStream out;
+			synchronized (this) {
+				in = this.in;
+				out = this.out;
+			}
+			if (in == null || out == null) {
+				throw new IOException(EXCEPTION_VALUTAZIONE_INTERROTTA); // Connessione chiusa da interrompi()
+			}
+			for (int i : gruppo.sottoalberi) {
+				if (this.risultati[i] != null) {
+					continue; // Già valutato da un tentativo precedente
+				}
+				out.writeInt(Lavoratore.SEGNALE_SOTTOALBERO);
+				SerializzatoreAlbero.scrivi(this.sottoalberi.get(i), out);
+				out.flush();
+				attendiRisultato(in);
+				double unita = in.readDouble();
+				List<String> lista_indici = leggiLista(in);
+				List<String> lista_unita = leggiLista(in);
+				this.risultati[i] = new RisultatoSottoalbero(unita, lista_indici, lista_unita);
+			}
+		}
+
+		/**
+		 * Avvia un nuovo processo di calcolo con lo stesso classpath di questo processo e ne attende la connessione.
+		 */
+		private void avvia() throws IOException {
+			ServerSocket nuovo_server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+			try {
+				nuovo_server.setSoTimeout(TIMEOUT_CONNESSIONE);
+				synchronized (this) {
+					this.server = nuovo_server;
+					this.verificaInterruzione();
+				}
+				ProcessBuilder builder = new ProcessBuilder(
+						System.getProperty("java.home") + File.separator + PERCORSO_JAVA,
+						OPZIONE_CLASSPATH, System.getProperty("java.class.path"),
+						Lavoratore.class.getName(), Integer.toString(nuovo_server.getLocalPort()));
+				builder.inheritIO();
+				Process nuovo_processo = builder.start();
+				synchronized (this) {
+					this.processo = nuovo_processo;
+					this.verificaInterruzione();
+				}
+				Socket nuovo_socket = nuovo_server.accept();
+				nuovo_socket.setSoTimeout(TIMEOUT_ATTIVITA); // Un processo bloccato fa fallire la lettura, e il gruppo viene ritentato
+				synchronized (this) {
+					this.socket = nuovo_socket;
+					this.verificaInterruzione();
+					this.in = new DataInputStream(new BufferedInputStream(this.socket.getInputStream(), DIM_BUFFER));
+					this.out = new DataOutputStream(new BufferedOutputStream(this.socket.getOutputStream(), DIM_BUFFER));
+				}
+			} finally {
+				nuovo_server.close();
+				synchronized (this) {
+					this.server = null;
+				}
+			}
+		}
+
+		/**
+		 * Se la valutazione è stata interrotta, chiude le risorse già create e segnala l'interruzione.
+		 * Va invocato in modo sincronizzato, subito dopo aver memorizzato una nuova risorsa.
+		 */
+		private void verificaInterruzione() throws IOException {
+			if (this.interrotto) {
+				this.termina();
+				throw new IOException(EXCEPTION_VALUTAZIONE_INTERROTTA);
+			}
+		}
+
+		/**
+		 * Interrompe la gestione del processo di calcolo da un altro thread: chiude la connessione (sbloccando
+		 * eventuali letture in corso), termina il processo e impedisce l'avvio di nuovi processi.
+		 */
+		void interrompi() {
+			this.interrotto = true;
+			this.termina();
+		}
+
+		/**
+		 * Chiude la connessione e termina forzatamente il processo di calcolo, se presenti.
+		 */
+		private synchronized void termina() {
+			if (this.server != null) {
+				try {
+					this.server.close(); // Sblocca un'eventuale attesa della connessione
+				} catch (IOException e) {
+					// Il server è comunque da abbandonare
+				}
+			}
+			if (this.socket != null) {
+				try {
+					this.socket.close();
+				} catch (IOException e) {
+					// La connessione è comunque da abbandonare
+				}
+			}
+			if (this.processo != null) {
+				this.processo.destroyForcibly();
+			}
+			this.server = null;
+			this.socket = null;
+			this.processo = null;
+			this.in = null;
+			this.out = null;
+		}
+
+		/**
+		 * Attende l'inizio del risultato di un sottoalbero, scartando i segnali di attività inviati dal processo
+		 * durante il calcolo.
+		 */
+		private static void attendiRisultato(DataInputStream in) throws IOException {
+			int segnale = in.readInt();
+			while (segnale == Lavoratore.SEGNALE_ATTIVO) {
+				segnale = in.readInt();
+			}
+			if (segnale != Lavoratore.SEGNALE_RISULTATO) {
+				throw new IOException(String.format(EXCEPTION_SEGNALE_INATTESO, segnale));
+			}
+		}
+
+		/**
+		 * Legge una lista di stringhe, preceduta dalla sua lunghezza.
+		 */
+		private static List<String> leggiLista(DataInputStream in) throws IOException {
+			int dimensione = in.readInt();
+			List<String> lista = new ArrayList<String>(dimensione);
+			for (int i = 0; i < dimensione; i++) {
+				lista.add(in.readUTF());
+			}
+			return lista;
+		}
+	}
+
+	/**
+	 * Classe che contiene i risultati di un sottoalbero restituiti da un processo di calcolo.
+	 */
+	private static final class RisultatoSottoalbero {
+
+		final double unita;
+		final List<String> lista_indici;
+		final List<String> lista_unita;
+
+		RisultatoSottoalbero(double _unita, List<String> _lista_indici, List<String> _lista_unita) {
+			this.unita = _unita;
+			this.lista_indici = _lista_indici;
+			this.lista_unita = _lista_unita;
+		}
+	}
+
+	/**
+	 * Classe che contiene il risultato della valutazione distribuita di un albero.
+	 */
+	public static final class Risultato {
+
+		private final double unita_tensore;
+		private final List<String> lista_indici;
+		private final List<String> lista_unita;
+
+		Risultato(double _unita_tensore, List<String> _lista_indici, List<String> _lista_unita) {
+			this.unita_tensore = _unita_tensore;
+			this.lista_indici = _lista_indici;
+			this.lista_unita = _lista_unita;
+		}
+
+		/**
+		 * Restituisce l'Unità di Tensore della radice.
+		 */
+		public double getUnitaTensore() {
+			return this.unita_tensore;
+		}
+
+		/**
+		 * Restituisce la lista degli indici, come NodoTensore.getListaIndici().
+		 */
+		public List<String> getListaIndici() {
+			return this.lista_indici;
+		}
+
+		/**
+		 * Restituisce la lista delle Unità di Tensore, come NodoTensore.getListaUnita().
+		 */
+		public List<String> getListaUnita() {
+			return this.lista_unita;
+		}
+	}
+
+}
@@ -0,0 +1,110 @@
+package tensor.distribuito;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.List;
+
+import tensor.tree.NodoTensore;
+import tensor.tree.SerializzatoreAlbero;
+
+/**
+ * Classe Main dei processi di calcolo avviati dal Coordinatore.
+ * Il processo si collega al Coordinatore sulla porta locale indicata come argomento, quindi riceve un
+ * sottoalbero alla volta, lo valuta e ne restituisce subito l'Unità di Tensore e le liste di indici e Unità.
+ * Poiché il Coordinatore invia il sottoalbero successivo solo dopo aver letto il risultato, nessuno dei due
+ * processi può restare bloccato in scrittura mentre l'altro sta a sua volta scrivendo.
+ * Per tutta la durata della connessione un thread invia ogni INTERVALLO_ATTIVITA millisecondi un segnale di
+ * attività, così che il Coordinatore distingua un calcolo lungo da un processo bloccato; i segnali sono pochi
+ * byte e vengono letti dal Coordinatore prima di ogni risultato.
+ * Termina quando riceve il segnale di fine o quando la connessione viene chiusa.
+ *
+ * @author Michele Dusi <michele.dusi.it@ieee.org>
+ *
+ */
+public final class Lavoratore {
+
+	static final int SEGNALE_SOTTOALBERO = 1;
+	static final int SEGNALE_FINE = -1;
+	static final int SEGNALE_RISULTATO = 2;
+	static final int SEGNALE_ATTIVO = 3;
+
+	private static final int DIM_BUFFER = 1 << 16;
+	private static final int INTERVALLO_ATTIVITA = 5000; // Millisecondi tra due segnali di attività.
+
+	private Lavoratore() {};
+
+	/**
+	 * Avvia il processo di calcolo.
+	 *
+	 * @param args Unico argomento: la porta locale su cui è in ascolto il Coordinatore.
+	 */
+	public static void main(String[] args) throws IOException {
+		int porta = Integer.parseInt(args[0]);
+		Socket socket = new Socket(InetAddress.getLoopbackAddress(), porta);
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), DIM_BUFFER));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), DIM_BUFFER));
+			avviaSegnaliAttivita(out);
+
+			int segnale = in.readInt();
+			while (segnale == SEGNALE_SOTTOALBERO) {
+				NodoTensore sottoalbero = SerializzatoreAlbero.leggi(in);
+				double unita = sottoalbero.getUnitaTensore();
+				List<String> lista_indici = sottoalbero.getListaIndici();
+				List<String> lista_unita = sottoalbero.getListaUnita();
+				// Il risultato è scritto per intero senza che un segnale di attività vi si inserisca in mezzo
+				synchronized (out) {
+					out.writeInt(SEGNALE_RISULTATO);
+					out.writeDouble(unita);
+					scriviLista(out, lista_indici);
+					scriviLista(out, lista_unita);
+					out.flush();
+				}
+				segnale = in.readInt();
+			}
+		} finally {
+			socket.close();
+		}
+	}
+
+	/**
+	 * Avvia il thread che invia periodicamente il segnale di attività. Il thread termina quando la scrittura
+	 * fallisce, cioè quando la connessione viene chiusa, oppure con il processo stesso.
+	 */
+	private static void avviaSegnaliAttivita(final DataOutputStream out) {
+		Thread segnali = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						Thread.sleep(INTERVALLO_ATTIVITA);
+						synchronized (out) {
+							out.writeInt(SEGNALE_ATTIVO);
+							out.flush();
+						}
+					}
+				} catch (InterruptedException | IOException e) {
+					// Connessione chiusa: non c'è più nessuno a cui segnalare l'attività
+				}
+			}
+		});
+		segnali.setDaemon(true);
+		segnali.start();
+	}
+
+	/**
+	 * Scrive una lista di stringhe, preceduta dalla sua lunghezza.
+	 */
+	private static void scriviLista(DataOutputStream out, List<String> lista) throws IOException {
+		out.writeInt(lista.size());
+		for (String s : lista) {
+			out.writeUTF(s);
+		}
+	}
+
+}
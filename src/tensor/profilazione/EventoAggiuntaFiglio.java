@@ -0,0 +1,51 @@
+package tensor.profilazione;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Evento di JDK Flight Recorder che misura l'aggiunta di un figlio ad un nodo dell'albero
+ * (vedi NodoTensore.aggiungiFiglio): verifica dell'unicità dell'etichetta fra i figli, inserimento e
+ * aggiornamento dell'Unità di Tensore. Non comprende la lettura del figlio né il calcolo dei suoi determinanti,
+ * misurati rispettivamente da {@link EventoLetturaFile} e {@link EventoDeterminante}.
+ *
+ * Gli eventi sono frequenti quanto i nodi dell'albero, per cui non registrano lo stack trace.
+ *
+ * @author Michele Dusi <michele.dusi.it@ieee.org>
+ *
+ */
+@Name("tensor.AggiuntaFiglio")
+@Label("Aggiunta di un figlio")
+@Category({"Tensor", "Costruzione"})
+@Description("Aggiunta di un nodo figlio all'albero di Tensori.")
+@StackTrace(false)
+public final class EventoAggiuntaFiglio extends Event {
+
+	@Label("Tensore")
+	@Description("TRUE se il figlio aggiunto è un Tensore.")
+	private boolean tensore;
+
+	@Label("Figli")
+	@Description("Numero di figli del nodo dopo l'aggiunta.")
+	private int figli;
+
+	/**
+	 * Conclude la misura e registra l'evento, se la registrazione è attiva e l'evento supera la soglia configurata.
+	 *
+	 * @param _tensore TRUE se il figlio aggiunto è un Tensore.
+	 * @param _figli Numero di figli del nodo dopo l'aggiunta.
+	 */
+	public void registra(boolean _tensore, int _figli) {
+		this.end();
+		if (this.shouldCommit()) {
+			this.tensore = _tensore;
+			this.figli = _figli;
+			this.commit();
+		}
+	}
+
+}
@@ -0,0 +1,95 @@
+package tensor.profilazione;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import tensor.tree.Matrice;
+import tensor.utility.MathUtility.AlgoritmoPerDeterminante;
+
+/**
+ * Evento di JDK Flight Recorder che misura il calcolo del determinante di una matrice.
+ * La durata dell'evento è il tempo di calcolo; algoritmo, dimensione, struttura e rappresentazione della
+ * matrice permettono di raggruppare i tempi e individuare le combinazioni più costose.
+ *
+ * Gli eventi sono molto frequenti, per cui non registrano lo stack trace.
+ *
+ * @author Michele Dusi <michele.dusi.it@ieee.org>
+ *
+ */
+@Name("tensor.Determinante")
+@Label("Calcolo del determinante")
+@Category({"Tensor", "Calcolo"})
+@Description("Calcolo del determinante di una matrice con l'algoritmo indicato.")
+@StackTrace(false)
+public final class EventoDeterminante extends Event {
+
+	@Label("Algoritmo")
+	private String algoritmo;
+
+	@Label("Dimensione")
+	private int dimensione;
+
+	@Label("Struttura")
+	private String struttura;
+
+	@Label("Rappresentazione")
+	@Description("Classe della matrice (densa, intera o sparsa).")
+	private String rappresentazione;
+
+	private EventoDeterminante() {};
+
+	/**
+	 * Calcola il determinante della matrice con l'algoritmo richiesto, registrando l'evento se la
+	 * registrazione è attiva. Altrimenti il costo aggiuntivo è trascurabile.
+	 *
+	 * @param matrice Matrice di cui calcolare il determinante.
+	 * @param algo Algoritmo da utilizzare.
+	 * @return Determinante della matrice.
+	 */
+	public static double calcola(Matrice matrice, AlgoritmoPerDeterminante algo) {
+		EventoDeterminante evento = new EventoDeterminante();
+		evento.begin();
+		double determinante = matrice.calcolaDeterminante(algo);
+		evento.end();
+		evento.registra(matrice, algo);
+		return determinante;
+	}
+
+	/**
+	 * Calcola il determinante come {@link #calcola(Matrice, AlgoritmoPerDeterminante)}, restituendo il tempo
+	 * di calcolo. Il tempo è misurato all'interno dell'evento, per cui non comprende né l'apertura né la
+	 * registrazione dell'evento stesso.
+	 *
+	 * @param matrice Matrice di cui calcolare il determinante.
+	 * @param algo Algoritmo da utilizzare.
+	 * @return Tempo di calcolo in nanosecondi.
+	 */
+	public static long misura(Matrice matrice, AlgoritmoPerDeterminante algo) {
+		EventoDeterminante evento = new EventoDeterminante();
+		evento.begin();
+		long inizio = System.nanoTime();
+		matrice.calcolaDeterminante(algo);
+		long durata = System.nanoTime() - inizio;
+		evento.end();
+		evento.registra(matrice, algo);
+		return durata;
+	}
+
+	/**
+	 * Completa e registra l'evento, se la registrazione è attiva e l'evento supera la soglia configurata.
+	 */
+	private void registra(Matrice matrice, AlgoritmoPerDeterminante algo) {
+		if (this.shouldCommit()) {
+			this.algoritmo = algo.name();
+			this.dimensione = matrice.getDimensione();
+			this.struttura = matrice.getStruttura().name();
+			this.rappresentazione = matrice.getClass().getSimpleName();
+			this.commit();
+		}
+	}
+
+}
@@ -0,0 +1,44 @@
+package tensor.profilazione;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Evento di JDK Flight Recorder che misura la lettura di un file XML da parte di ParserXML.
+ * Nella lettura completa la durata comprende anche l'aggiunta dei nodi all'albero e il calcolo dei
+ * determinanti, misurati dai rispettivi eventi.
+ *
+ * @author Michele Dusi <michele.dusi.it@ieee.org>
+ *
+ */
+@Name("tensor.LetturaFile")
+@Label("Lettura del file")
+@Category({"Tensor", "Lettura"})
+@Description("Lettura di un file XML e costruzione dell'albero di Tensori.")
+public final class EventoLetturaFile extends Event {
+
+	public static final String MODALITA_COMPLETA = "completa";
+	public static final String MODALITA_PIGRA = "pigra";
+	public static final String MODALITA_PIPELINE = "pipeline";
+
+	@Label("File")
+	private final String file;
+
+	@Label("Modalità")
+	private final String modalita;
+
+	/**
+	 * Costruttore dell'evento. La misura inizia con begin() e termina con commit().
+	 *
+	 * @param _file Nome del file letto.
+	 * @param _modalita Modalità di lettura (vedi le costanti MODALITA_*).
+	 */
+	public EventoLetturaFile(String _file, String _modalita) {
+		this.file = _file;
+		this.modalita = _modalita;
+	}
+
+}
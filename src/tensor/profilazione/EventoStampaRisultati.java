@@ -0,0 +1,38 @@
+package tensor.profilazione;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Evento di JDK Flight Recorder che misura la stampa dei risultati (indici e Unità di Tensore) di un file.
+ *
+ * @author Michele Dusi <michele.dusi.it@ieee.org>
+ *
+ */
+@Name("tensor.StampaRisultati")
+@Label("Stampa dei risultati")
+@Category({"Tensor", "Risultati"})
+@Description("Stampa degli indici e delle Unità di Tensore di un file.")
+public final class EventoStampaRisultati extends Event {
+
+	@Label("File")
+	private final String file;
+
+	@Label("Righe")
+	private final int righe;
+
+	/**
+	 * Costruttore dell'evento. La misura inizia con begin() e termina con commit().
+	 *
+	 * @param _file Nome del file di cui si stampano i risultati.
+	 * @param _righe Numero di righe stampate.
+	 */
+	public EventoStampaRisultati(String _file, int _righe) {
+		this.file = _file;
+		this.righe = _righe;
+	}
+
+}
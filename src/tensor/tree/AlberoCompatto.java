@@ -0,0 +1,276 @@
+package tensor.tree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import tensor.utility.MathUtility.ValoreLogaritmico;
+
+/**
+ * Classe che rappresenta un'istantanea in sola lettura di un albero di NodiTensore, memorizzata in forma
+ * compatta. Invece di un oggetto per nodo, con le relative liste di figli e di matrici, tutte le informazioni
+ * sono salvate in array di tipi primitivi indicizzati secondo l'ordine di visita anticipata (pre-order):
+ * il nodo 0 è la radice e i discendenti di un nodo occupano le posizioni immediatamente successive.
+ *
+ * In questo modo le visite dell'albero diventano semplici cicli sugli indici, senza ricorsione né
+ * accessi indiretti, e l'occupazione di memoria per nodo si riduce a poche decine di byte.
+ *
+ * @author Michele Dusi <michele.dusi.it@ieee.org>
+ *
+ */
+public final class AlberoCompatto {
+
+	private static final byte TIPO_NODO = 0;
+	private static final byte TIPO_TENSORE = 1;
+	private static final int NESSUN_GENITORE = -1;
+
+	private final int numero_nodi;
+
+	// Struttura dell'albero
+	private final int [] genitore;
+	private final int [] fine_sottoalbero; // Posizione successiva all'ultimo discendente del nodo.
+	private final byte [] tipo;
+	private final boolean [] is_root;
+	private final int [] id_label;
+	private final String [] etichette; // Dizionario delle etichette, indicizzato da id_label.
+
+	/*
+	 * Matrici e determinanti di tutti i Tensori. Le matrici di un Tensore occupano l'intervallo
+	 * [inizio_matrici[i], fine_matrici[i]); l'ordine complessivo è lo stesso di NodoTensore.getMatrici(),
+	 * in cui le matrici di un Tensore seguono quelle dei suoi discendenti.
+	 */
+	private final Matrice [] matrici;
+	private final double [] determinanti;
+	private final ValoreLogaritmico [] log_determinanti;
+	private final int [] inizio_matrici;
+	private final int [] fine_matrici;
+
+	// Risultati della valutazione
+	private final double [] unita_tensore;
+	private final double [] indice;
+
+	/*
+	 * Contatori utilizzati solo durante la costruzione.
+	 */
+	private int prossimo_nodo;
+	private int prossima_matrice;
+
+	/**
+	 * Costruttore privato: le istanze si ottengono con {@link #da(NodoTensore)}.
+	 *
+	 * @param radice Radice dell'albero da copiare.
+	 */
+	private AlberoCompatto(NodoTensore radice) {
+		int [] conteggi = new int [2]; // [0] nodi, [1] matrici
+		conta(radice, conteggi);
+		this.numero_nodi = conteggi[0];
+		this.genitore = new int [numero_nodi];
+		this.fine_sottoalbero = new int [numero_nodi];
+		this.tipo = new byte [numero_nodi];
+		this.is_root = new boolean [numero_nodi];
+		this.id_label = new int [numero_nodi];
+		this.inizio_matrici = new int [numero_nodi];
+		this.fine_matrici = new int [numero_nodi];
+		this.unita_tensore = new double [numero_nodi];
+		this.indice = new double [numero_nodi];
+		this.matrici = new Matrice [conteggi[1]];
+		this.determinanti = new double [conteggi[1]];
+		this.log_determinanti = new ValoreLogaritmico [conteggi[1]];
+
+		List<String> lista_etichette = new ArrayList<String>();
+		this.copia(radice, NESSUN_GENITORE, new HashMap<String, Integer>(), lista_etichette);
+		this.etichette = lista_etichette.toArray(new String [lista_etichette.size()]);
+	}
+
+	/**
+	 * Crea l'istantanea compatta di un albero. L'albero viene caricato completamente, se necessario;
+	 * i determinanti già calcolati dai Tensori sono riutilizzati.
+	 *
+	 * @param radice Radice dell'albero.
+	 * @return Istantanea compatta e già valutata dell'albero.
+	 */
+	public static AlberoCompatto da(NodoTensore radice) {
+		AlberoCompatto albero = new AlberoCompatto(radice);
+		albero.valuta();
+		return albero;
+	}
+
+	/**
+	 * Conta ricorsivamente i nodi e le matrici dell'albero.
+	 */
+	private static void conta(NodoTensore nodo, int [] conteggi) {
+		conteggi[0]++;
+		if (nodo instanceof Tensore) {
+			conteggi[1] += ((Tensore) nodo).getMatriciProprie().size();
+		}
+		for (NodoTensore figlio : nodo.getFigli()) {
+			conta(figlio, conteggi);
+		}
+	}
+
+	/**
+	 * Copia ricorsivamente un nodo e i suoi discendenti negli array, in ordine anticipato.
+	 * Le matrici del nodo sono copiate dopo quelle dei discendenti.
+	 */
+	private void copia(NodoTensore nodo, int padre, Map<String, Integer> id_etichette, List<String> lista_etichette) {
+		int i = this.prossimo_nodo++;
+		this.genitore[i] = padre;
+		this.tipo[i] = (nodo instanceof Tensore) ? TIPO_TENSORE : TIPO_NODO;
+		this.is_root[i] = nodo.isRoot();
+		Integer id = id_etichette.get(nodo.getLabel());
+		if (id == null) {
+			id = lista_etichette.size();
+			lista_etichette.add(nodo.getLabel());
+			id_etichette.put(nodo.getLabel(), id);
+		}
+		this.id_label[i] = id;
+
+		for (NodoTensore figlio : nodo.getFigli()) {
+			this.copia(figlio, i, id_etichette, lista_etichette);
+		}
+		this.fine_sottoalbero[i] = this.prossimo_nodo;
+
+		this.inizio_matrici[i] = this.prossima_matrice;
+		if (this.tipo[i] == TIPO_TENSORE) {
+			Tensore tensore = (Tensore) nodo;
+			List<Matrice> proprie = tensore.getMatriciProprie();
+			List<Double> det = tensore.getDeterminanti();
+			List<ValoreLogaritmico> log_det = tensore.getLogDeterminanti();
+			for (int k = 0; k < proprie.size(); k++) {
+				this.matrici[this.prossima_matrice] = proprie.get(k);
+				this.determinanti[this.prossima_matrice] = det.get(k);
+				this.log_determinanti[this.prossima_matrice] = log_det.get(k);
+				this.prossima_matrice++;
+			}
+		}
+		this.fine_matrici[i] = this.prossima_matrice;
+	}
+
+	/**
+	 * Calcola indici e Unità di Tensore di tutti i nodi con due cicli sugli array.
+	 * Il primo calcola i valori propri di ogni Tensore; il secondo, percorrendo i nodi in ordine inverso,
+	 * propaga l'Unità di ogni nodo al genitore (che quindi riceve i valori dei figli già completi).
+	 */
+	private void valuta() {
+		for (int i = 0; i < numero_nodi; i++) {
+			boolean radice = is_root[i];
+			double somma = 0;
+			double unita = 0;
+			for (int k = inizio_matrici[i]; k < fine_matrici[i]; k++) {
+				somma += determinanti[k];
+				unita = radice ? Math.min(unita, determinanti[k]) : Math.max(unita, determinanti[k]);
+			}
+			indice[i] = somma;
+			unita_tensore[i] = unita;
+		}
+		for (int i = numero_nodi - 1; i > 0; i--) {
+			int padre = genitore[i];
+			if (is_root[padre]) {
+				unita_tensore[padre] = Math.min(unita_tensore[padre], unita_tensore[i]);
+			} else {
+				unita_tensore[padre] = Math.max(unita_tensore[padre], unita_tensore[i]);
+			}
+		}
+	}
+
+	/**
+	 * Restituisce il numero di nodi dell'albero, Tensori compresi.
+	 */
+	public int getNumeroNodi() {
+		return this.numero_nodi;
+	}
+
+	/**
+	 * Restituisce la posizione del genitore del nodo i, oppure -1 per la radice.
+	 */
+	public int getGenitore(int i) {
+		return this.genitore[i];
+	}
+
+	/**
+	 * Restituisce l'etichetta del nodo i.
+	 */
+	public String getLabel(int i) {
+		return this.etichette[this.id_label[i]];
+	}
+
+	/**
+	 * Indica se il nodo i è un Tensore.
+	 */
+	public boolean isTensore(int i) {
+		return this.tipo[i] == TIPO_TENSORE;
+	}
+
+	/**
+	 * Restituisce l'Unità di Tensore del nodo i.
+	 */
+	public double getUnitaTensore(int i) {
+		return this.unita_tensore[i];
+	}
+
+	/**
+	 * Restituisce l'indice del Tensore i (somma dei determinanti delle sue matrici).
+	 */
+	public double getIndice(int i) {
+		return this.indice[i];
+	}
+
+	/**
+	 * Restituisce la lista degli indici di ciascun Tensore dell'albero, nello stesso ordine e con le stesse
+	 * regole di NodoTensore.getListaIndici(): i discendenti di un Tensore non vengono visitati.
+	 *
+	 * @return Lista di valori "Indici di Tensore".
+	 */
+	public List<String> getListaIndici() {
+		List<String> lista = new ArrayList<String>();
+		int i = 0;
+		while (i < numero_nodi) {
+			if (tipo[i] == TIPO_TENSORE) {
+				lista.add(this.descriviIndice(i));
+				i = fine_sottoalbero[i];
+			} else {
+				i++;
+			}
+		}
+		return lista;
+	}
+
+	/**
+	 * Restituisce la descrizione dell'indice del Tensore i. Come in Tensore, se l'indice non è rappresentabile
+	 * come double viene sostituito dall'indice in forma logaritmica.
+	 */
+	private String descriviIndice(int i) {
+		return Tensore.descriviIndice(indice[i],
+				ValoreLogaritmico.somma(Arrays.asList(Arrays.copyOfRange(log_determinanti, inizio_matrici[i], fine_matrici[i]))));
+	}
+
+	/**
+	 * Restituisce la lista delle Unità di Tensore di ciascun nodo, in ordine anticipato.
+	 *
+	 * @return Lista di valori "Unità di Tensore".
+	 */
+	public List<String> getListaUnita() {
+		List<String> lista = new ArrayList<String>(numero_nodi);
+		for (int i = 0; i < numero_nodi; i++) {
+			lista.add(String.format(NodoTensore.INTRO_UNITA, getLabel(i), unita_tensore[i]));
+		}
+		return lista;
+	}
+
+	/**
+	 * Restituisce tutte le Matrici di tutti i Tensori dell'albero.
+	 */
+	public List<Matrice> getMatrici() {
+		return Arrays.asList(this.matrici.clone());
+	}
+
+	/**
+	 * Restituisce le Matrici del solo Tensore i, esclusi i suoi discendenti.
+	 */
+	public List<Matrice> getMatrici(int i) {
+		return Arrays.asList(Arrays.copyOfRange(this.matrici, inizio_matrici[i], fine_matrici[i]));
+	}
+
+}
@@ -0,0 +1,178 @@
+package tensor.tree;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import tensor.utility.MathUtility.ValoreLogaritmico;
+
+/**
+ * Classe che conserva i risultati della valutazione dei sottoalberi (indici e Unità di Tensore), indicizzati
+ * per impronta strutturale (vedi {@link NodoTensore#getImpronta()}).
+ *
+ * Quando si valuta una nuova versione di un albero già valutato, i sottoalberi identici hanno la stessa
+ * impronta e i loro risultati vengono riutilizzati: solo i sottoalberi modificati richiedono il calcolo dei
+ * determinanti. Se l'albero è stato letto in modalità pigra, le matrici dei Tensori invariati non vengono
+ * nemmeno lette; se è stato letto in modalità completa, il risparmio si ottiene solo fornendo l'archivio
+ * al parser (vedi ParserXML.leggiFile(String, ArchivioValutazioni)), che altrimenti calcola tutti i
+ * determinanti durante la lettura.
+ *
+ * @author Michele Dusi <michele.dusi.it@ieee.org>
+ *
+ */
+public class ArchivioValutazioni {
+
+	private Map<String, Risultato> risultati;
+
+	private int sottoalberi_calcolati;
+	private int sottoalberi_riutilizzati;
+
+	/**
+	 * Costruttore che inizializza un archivio vuoto.
+	 */
+	public ArchivioValutazioni() {
+		this.risultati = new HashMap<String, Risultato>();
+	}
+
+	/**
+	 * Restituisce la lista degli indici di ciascun Tensore dell'albero, come NodoTensore.getListaIndici(),
+	 * riutilizzando i risultati archiviati.
+	 *
+	 * @param radice Radice dell'albero da valutare.
+	 * @return Lista di valori "Indici di Tensore".
+	 */
+	public List<String> getListaIndici(NodoTensore radice) {
+		List<String> lista = new ArrayList<String>();
+		this.aggiungiIndici(radice, lista);
+		return lista;
+	}
+
+	/**
+	 * Restituisce la lista delle Unità di Tensore di ciascun nodo, come NodoTensore.getListaUnita(),
+	 * riutilizzando i risultati archiviati.
+	 *
+	 * @param radice Radice dell'albero da valutare.
+	 * @return Lista di valori "Unità di Tensore".
+	 */
+	public List<String> getListaUnita(NodoTensore radice) {
+		List<String> lista = new ArrayList<String>();
+		this.aggiungiUnita(radice, lista);
+		return lista;
+	}
+
+	/**
+	 * Restituisce l'Unità di Tensore di un nodo, riutilizzando i risultati archiviati.
+	 */
+	public double getUnitaTensore(NodoTensore nodo) {
+		return this.valuta(nodo).unita;
+	}
+
+	/**
+	 * Indica se l'archivio contiene il risultato del sottoalbero con l'impronta indicata.
+	 */
+	public boolean contiene(String impronta) {
+		return this.risultati.containsKey(impronta);
+	}
+
+	/**
+	 * Restituisce il numero di sottoalberi valutati finora calcolandone i risultati.
+	 */
+	public int getSottoalberiCalcolati() {
+		return this.sottoalberi_calcolati;
+	}
+
+	/**
+	 * Restituisce il numero di volte in cui il risultato di un sottoalbero è stato trovato nell'archivio.
+	 */
+	public int getSottoalberiRiutilizzati() {
+		return this.sottoalberi_riutilizzati;
+	}
+
+	/**
+	 * Svuota l'archivio.
+	 */
+	public void svuota() {
+		this.risultati.clear();
+	}
+
+	/**
+	 * Metodo ricorsivo che aggiunge alla lista gli indici dei Tensori del sottoalbero.
+	 * Come in Tensore.getListaIndici(), i discendenti di un Tensore non vengono considerati.
+	 */
+	private void aggiungiIndici(NodoTensore nodo, List<String> lista) {
+		if (nodo instanceof Tensore) {
+			Risultato risultato = this.valuta(nodo);
+			lista.add(Tensore.descriviIndice(risultato.indice, risultato.indice_logaritmico));
+		} else {
+			for (NodoTensore nt : nodo.getFigli()) {
+				this.aggiungiIndici(nt, lista);
+			}
+		}
+	}
+
+	/**
+	 * Metodo ricorsivo che aggiunge alla lista le Unità di Tensore dei nodi del sottoalbero, in ordine anticipato.
+	 */
+	private void aggiungiUnita(NodoTensore nodo, List<String> lista) {
+		lista.add(String.format(NodoTensore.INTRO_UNITA, nodo.getLabel(), this.valuta(nodo).unita));
+		for (NodoTensore nt : nodo.getFigli()) {
+			this.aggiungiUnita(nt, lista);
+		}
+	}
+
+	/**
+	 * Metodo che restituisce il risultato di un sottoalbero: se l'impronta è già presente nell'archivio
+	 * il risultato viene riutilizzato, altrimenti viene calcolato a partire dai risultati dei figli
+	 * e dai determinanti delle matrici proprie, e quindi archiviato.
+	 *
+	 * @param nodo Radice del sottoalbero.
+	 * @return Risultato del sottoalbero.
+	 */
+	private Risultato valuta(NodoTensore nodo) {
+		String impronta = nodo.getImpronta();
+		Risultato risultato = this.risultati.get(impronta);
+		if (risultato != null) {
+			this.sottoalberi_riutilizzati++;
+			return risultato;
+		}
+
+		// Stesso valore iniziale e stesse regole di aggiornamento di NodoTensore
+		double unita = 0;
+		double indice = 0;
+		ValoreLogaritmico indice_logaritmico = null;
+		if (nodo instanceof Tensore) {
+			for (double det : ((Tensore) nodo).getDeterminanti()) {
+				indice += det;
+				unita = nodo.isRoot() ? Math.min(unita, det) : Math.max(unita, det);
+			}
+			indice_logaritmico = ValoreLogaritmico.somma(((Tensore) nodo).getLogDeterminanti());
+		}
+		for (NodoTensore nt : nodo.getFigli()) {
+			double unita_figlio = this.valuta(nt).unita;
+			unita = nodo.isRoot() ? Math.min(unita, unita_figlio) : Math.max(unita, unita_figlio);
+		}
+
+		risultato = new Risultato(unita, indice, indice_logaritmico);
+		this.risultati.put(impronta, risultato);
+		this.sottoalberi_calcolati++;
+		return risultato;
+	}
+
+	/**
+	 * Classe che contiene i risultati della valutazione di un sottoalbero.
+	 */
+	private static final class Risultato {
+
+		final double unita;
+		final double indice; // Significativo solo per i Tensori.
+		final ValoreLogaritmico indice_logaritmico; // Indice in forma logaritmica, nullo per i nodi che non sono Tensori.
+
+		Risultato(double _unita, double _indice, ValoreLogaritmico _indice_logaritmico) {
+			this.unita = _unita;
+			this.indice = _indice;
+			this.indice_logaritmico = _indice_logaritmico;
+		}
+	}
+
+}
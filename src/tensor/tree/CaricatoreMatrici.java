@@ -0,0 +1,38 @@
+package tensor.tree;
+
+import java.util.List;
+
+/**
+ * Interfaccia che rappresenta una sorgente da cui un Tensore può leggere le proprie matrici in un
+ * momento successivo alla sua costruzione. Permette il caricamento "pigro" dei tensori: le matrici
+ * vengono lette solamente quando sono effettivamente richieste.
+ * 
+ * @author Michele Dusi <michele.dusi.it@ieee.org>
+ *
+ */
+public interface CaricatoreMatrici {
+	
+	/**
+	 * Legge e restituisce le matrici di un Tensore, nell'ordine in cui compaiono nella sorgente.
+	 * 
+	 * @return Lista delle matrici lette.
+	 * @throws IllegalStateException Se la lettura fallisce.
+	 */
+	public List<Matrice> caricaMatrici() throws IllegalStateException;
+	
+	/**
+	 * Restituisce le impronte delle matrici (vedi {@link Matrice#getImpronta()}), calcolate senza
+	 * costruire le matrici stesse. Le impronte sono calcolate ad ogni chiamata, solo quando richieste.
+	 * 
+	 * @return Lista delle impronte, nello stesso ordine delle matrici.
+	 */
+	public List<byte []> getImpronte();
+	
+	/**
+	 * Restituisce le dimensioni delle matrici, note senza costruire le matrici stesse.
+	 * 
+	 * @return Lista delle dimensioni, nello stesso ordine delle matrici.
+	 */
+	public List<Integer> getDimensioni();
+
+}
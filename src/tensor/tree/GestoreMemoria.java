@@ -0,0 +1,365 @@
+package tensor.tree;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import tensor.utility.Impronta;
+
+/**
+ * Classe che limita la memoria occupata dalle matrici di un albero di Tensori.
+ *
+ * I Tensori registrati sono mantenuti in ordine di ultimo accesso: quando la memoria stimata delle loro
+ * matrici supera il budget, le matrici dei Tensori usati meno di recente vengono scritte su un file
+ * temporaneo in forma binaria compatta (densa, intera o CSR) e rimosse dalla memoria. I determinanti restano
+ * in memoria, per cui indici e Unità di Tensore si calcolano senza rileggere nulla; anche le impronte delle
+ * matrici sono scritte su disco insieme ad esse. Le matrici vengono rilette in modo trasparente solo dalle
+ * operazioni che ne hanno bisogno (prodotti, stampa...).
+ *
+ * Un Tensore già scritto su disco e non più modificato non viene riscritto alle successive rimozioni.
+ * Lo spazio occupato sul file dalle copie non più valide non viene recuperato fino alla chiusura.
+ *
+ * Ordine dei lock: prima quello del Tensore, poi quello del gestore. I campi di un Tensore sono modificati
+ * solo con entrambi; per questo lo spostamento su disco avviene fuori dal lock del gestore, un Tensore alla
+ * volta, e non può essere avviato da un thread che possiede già il lock di un Tensore.
+ *
+ * @author Michele Dusi <michele.dusi.it@ieee.org>
+ *
+ */
+public class GestoreMemoria implements Closeable {
+
+	private static final String PREFISSO_FILE = "tensori";
+	private static final String SUFFISSO_FILE = ".bin";
+	private static final String MODALITA_FILE = "rw";
+
+	private static final String EXCEPTION_BUDGET_NEGATIVO = "Il budget di memoria non può essere negativo.";
+	private static final String EXCEPTION_SCRITTURA = "Errore nella scrittura delle matrici su disco.";
+	private static final String EXCEPTION_LETTURA = "Errore nella lettura delle matrici da disco.";
+
+	private final long budget;
+	private long occupazione;
+
+	private final LinkedHashMap<Tensore, Long> residenti; // Tensori in memoria, dal meno recente, con la loro occupazione.
+	private final Map<Tensore, CopiaSuDisco> copie; // Copie su disco ancora valide.
+
+	private final File file;
+	private final RandomAccessFile accesso_file;
+	private final FileChannel canale;
+	private long fine_file;
+
+	private int matrici_scaricate;
+	private int matrici_ricaricate;
+
+	/**
+	 * Costruttore che crea un gestore con il budget indicato e il relativo file temporaneo.
+	 *
+	 * @param _budget Memoria massima (in byte) occupata dalle matrici dei Tensori registrati.
+	 * @throws IOException Se non è possibile creare il file temporaneo.
+	 * @throws IllegalArgumentException Se il budget è negativo.
+	 */
+	public GestoreMemoria(long _budget) throws IOException, IllegalArgumentException {
+		if (_budget < 0) {
+			throw new IllegalArgumentException(EXCEPTION_BUDGET_NEGATIVO);
+		}
+		this.budget = _budget;
+		this.occupazione = 0;
+		this.residenti = new LinkedHashMap<Tensore, Long>(16, 0.75f, true);
+		this.copie = new HashMap<Tensore, CopiaSuDisco>();
+		this.file = File.createTempFile(PREFISSO_FILE, SUFFISSO_FILE);
+		this.file.deleteOnExit();
+		this.accesso_file = new RandomAccessFile(this.file, MODALITA_FILE);
+		this.canale = this.accesso_file.getChannel();
+		this.fine_file = 0;
+	}
+
+	/**
+	 * Registra tutti i Tensori di un albero. I Tensori letti in modalità pigra vengono conteggiati
+	 * solo quando le loro matrici sono effettivamente lette.
+	 *
+	 * @param radice Radice dell'albero.
+	 */
+	public void registraAlbero(NodoTensore radice) {
+		if (radice instanceof Tensore) {
+			this.registra((Tensore) radice);
+		}
+		for (NodoTensore nt : radice.getFigli()) {
+			this.registraAlbero(nt);
+		}
+	}
+
+	/**
+	 * Registra un Tensore (o ne aggiorna l'occupazione, se le sue matrici sono in memoria) e, se il budget è
+	 * superato, scarica su disco i Tensori usati meno di recente. Il Tensore appena registrato non viene
+	 * mai scaricato.
+	 * Non va invocato da un thread che possiede il lock di un Tensore (vedi l'ordine dei lock).
+	 *
+	 * @param tensore Tensore da registrare.
+	 * @throws IllegalStateException Se non è possibile scrivere sul file temporaneo.
+	 */
+	public void registra(Tensore tensore) throws IllegalStateException {
+		synchronized (tensore) {
+			tensore.setGestore(this);
+			if (tensore.isResidente()) {
+				this.aggiornaOccupazione(tensore);
+			}
+		}
+		this.rispettaBudget(tensore);
+	}
+
+	/**
+	 * Aggiorna l'occupazione di un Tensore le cui matrici sono in memoria, che diventa il più recente,
+	 * senza scaricare altri Tensori. Il chiamante possiede il lock del Tensore.
+	 */
+	synchronized void aggiornaOccupazione(Tensore tensore) {
+		long occupazione_tensore = 0;
+		for (Matrice m : tensore.getMatriciResidenti()) {
+			occupazione_tensore += m.getOccupazioneStimata();
+		}
+		Long precedente = this.residenti.put(tensore, occupazione_tensore);
+		if (precedente != null) {
+			this.occupazione -= precedente;
+		}
+		this.occupazione += occupazione_tensore;
+	}
+
+	/**
+	 * Scarica su disco i Tensori usati meno di recente, escluso quello indicato, finché l'occupazione non
+	 * rientra nel budget. Ogni Tensore è scaricato con il proprio lock e poi con quello del gestore, dopo
+	 * aver verificato che sia ancora in memoria; il chiamante non deve possedere il lock di alcun Tensore.
+	 *
+	 * @param escluso Tensore da non scaricare (tipicamente quello appena letto o modificato).
+	 * @throws IllegalStateException Se non è possibile scrivere sul file temporaneo.
+	 */
+	void rispettaBudget(Tensore escluso) throws IllegalStateException {
+		while (true) {
+			Tensore meno_recente = null;
+			synchronized (this) {
+				if (this.occupazione <= this.budget) {
+					return;
+				}
+				for (Tensore t : this.residenti.keySet()) {
+					if (t != escluso) {
+						meno_recente = t;
+						break;
+					}
+				}
+				if (meno_recente == null) {
+					return;
+				}
+			}
+			synchronized (meno_recente) {
+				synchronized (this) {
+					if (this.occupazione > this.budget && this.residenti.containsKey(meno_recente)) {
+						this.scarica(meno_recente);
+						this.occupazione -= this.residenti.remove(meno_recente);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Segnala l'accesso alle matrici di un Tensore in memoria, che diventa il più recente.
+	 */
+	synchronized void accedi(Tensore tensore) {
+		this.residenti.get(tensore);
+	}
+
+	/**
+	 * Segnala che le matrici di un Tensore sono cambiate: l'eventuale copia su disco non è più valida
+	 * e l'occupazione viene aggiornata. Il chiamante possiede il lock del Tensore.
+	 */
+	synchronized void modificato(Tensore tensore) {
+		this.copie.remove(tensore);
+		if (this.residenti.containsKey(tensore)) {
+			this.aggiornaOccupazione(tensore);
+		}
+	}
+
+	/**
+	 * Restituisce la memoria stimata (in byte) occupata dalle matrici dei Tensori in memoria.
+	 */
+	public synchronized long getOccupazione() {
+		return this.occupazione;
+	}
+
+	/**
+	 * Restituisce il budget di memoria (in byte).
+	 */
+	public long getBudget() {
+		return this.budget;
+	}
+
+	/**
+	 * Restituisce il numero di matrici rimosse dalla memoria finora.
+	 */
+	public synchronized int getMatriciScaricate() {
+		return this.matrici_scaricate;
+	}
+
+	/**
+	 * Restituisce il numero di matrici rilette da disco finora.
+	 */
+	public synchronized int getMatriciRicaricate() {
+		return this.matrici_ricaricate;
+	}
+
+	/**
+	 * Chiude e cancella il file temporaneo. Le matrici che si trovano su disco non sono più leggibili.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		this.accesso_file.close();
+		this.file.delete();
+	}
+
+	/**
+	 * Metodo che rimuove dalla memoria le matrici di un Tensore, scrivendole su disco se non ne esiste
+	 * già una copia valida. Il chiamante possiede il lock del Tensore e quello del gestore.
+	 */
+	private void scarica(Tensore tensore) throws IllegalStateException {
+		CopiaSuDisco copia = this.copie.get(tensore);
+		List<Matrice> matrici = tensore.getMatriciResidenti();
+		if (copia == null) {
+			copia = this.scrivi(matrici);
+			this.copie.put(tensore, copia);
+		}
+		this.matrici_scaricate += matrici.size();
+		tensore.scaricaMatrici(copia);
+	}
+
+	/**
+	 * Metodo che scrive un gruppo di matrici in coda al file temporaneo.
+	 * Formato: numero di matrici, le loro impronte (vedi {@link Matrice#getImpronta()}), quindi per ciascuna
+	 * matrice il suo record (vedi {@link SerializzatoreAlbero#serializzaMatrice(Matrice)}).
+	 * Ogni matrice è scritta con un proprio buffer, per cui la dimensione del gruppo non è limitata.
+	 *
+	 * @return Posizione della copia all'interno del file.
+	 * @throws IllegalStateException Se la scrittura fallisce o una matrice è troppo grande per un singolo record.
+	 */
+	private CopiaSuDisco scrivi(List<Matrice> matrici) throws IllegalStateException {
+		List<Integer> dimensioni = new ArrayList<Integer>(matrici.size());
+		for (Matrice m : matrici) {
+			dimensioni.add(m.getDimensione());
+		}
+		CopiaSuDisco copia = new CopiaSuDisco(this.fine_file, dimensioni);
+		ByteBuffer intestazione = ByteBuffer.allocate(Integer.BYTES + matrici.size() * Impronta.LUNGHEZZA);
+		intestazione.putInt(matrici.size());
+		for (Matrice m : matrici) {
+			intestazione.put(m.getImpronta());
+		}
+		intestazione.flip();
+		this.accoda(intestazione);
+		for (Matrice m : matrici) {
+			this.accoda(SerializzatoreAlbero.serializzaMatrice(m));
+		}
+		return copia;
+	}
+
+	/**
+	 * Metodo che scrive il contenuto del buffer in coda al file temporaneo.
+	 */
+	private void accoda(ByteBuffer buffer) throws IllegalStateException {
+		long inizio = this.fine_file;
+		try {
+			while (buffer.hasRemaining()) {
+				this.canale.write(buffer, inizio + buffer.position());
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException(EXCEPTION_SCRITTURA, e);
+		}
+		this.fine_file += buffer.limit();
+	}
+
+	/**
+	 * Metodo che rilegge un gruppo di matrici scritto da {@link #scrivi(List)}, un record alla volta.
+	 */
+	private synchronized List<Matrice> leggi(CopiaSuDisco copia) throws IllegalStateException {
+		long posizione = copia.posizione;
+		int numero_matrici = this.leggiBlocco(posizione, Integer.BYTES).getInt();
+		posizione += Integer.BYTES + (long) numero_matrici * Impronta.LUNGHEZZA;
+		List<Matrice> matrici = new ArrayList<Matrice>(numero_matrici);
+		for (int k = 0; k < numero_matrici; k++) {
+			int lunghezza = this.leggiBlocco(posizione, Integer.BYTES).getInt();
+			posizione += Integer.BYTES;
+			matrici.add(SerializzatoreAlbero.deserializzaMatrice(this.leggiBlocco(posizione, lunghezza)));
+			posizione += lunghezza;
+		}
+		this.matrici_ricaricate += numero_matrici;
+		return matrici;
+	}
+
+	/**
+	 * Metodo che rilegge le sole impronte di un gruppo di matrici scritto da {@link #scrivi(List)}.
+	 */
+	private synchronized List<byte []> leggiImpronte(CopiaSuDisco copia) throws IllegalStateException {
+		int numero_matrici = this.leggiBlocco(copia.posizione, Integer.BYTES).getInt();
+		ByteBuffer blocco = this.leggiBlocco(copia.posizione + Integer.BYTES, numero_matrici * Impronta.LUNGHEZZA);
+		List<byte []> impronte = new ArrayList<byte []>(numero_matrici);
+		for (int k = 0; k < numero_matrici; k++) {
+			byte [] impronta = new byte [Impronta.LUNGHEZZA];
+			blocco.get(impronta);
+			impronte.add(impronta);
+		}
+		return impronte;
+	}
+
+	/**
+	 * Metodo che legge dal file temporaneo il numero di byte indicato, a partire dalla posizione indicata.
+	 *
+	 * @return Buffer pronto per la lettura.
+	 */
+	private ByteBuffer leggiBlocco(long posizione, int lunghezza) throws IllegalStateException {
+		ByteBuffer buffer = ByteBuffer.allocate(lunghezza);
+		try {
+			while (buffer.hasRemaining()) {
+				if (this.canale.read(buffer, posizione + buffer.position()) < 0) {
+					throw new IOException();
+				}
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException(EXCEPTION_LETTURA, e);
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Posizione delle matrici di un Tensore all'interno del file temporaneo.
+	 * Viene usata dal Tensore come sorgente da cui rileggere le matrici.
+	 */
+	private final class CopiaSuDisco implements CaricatoreMatrici {
+
+		final long posizione;
+		final List<Integer> dimensioni;
+
+		CopiaSuDisco(long _posizione, List<Integer> _dimensioni) {
+			this.posizione = _posizione;
+			this.dimensioni = _dimensioni;
+		}
+
+		@Override
+		public List<Matrice> caricaMatrici() throws IllegalStateException {
+			return leggi(this);
+		}
+
+		@Override
+		public List<byte []> getImpronte() {
+			return leggiImpronte(this);
+		}
+
+		@Override
+		public List<Integer> getDimensioni() {
+			return this.dimensioni;
+		}
+	}
+
+}
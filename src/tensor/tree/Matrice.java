@@ -1,8 +1,13 @@
 package tensor.tree;
 
+import java.util.ArrayList;
 import java.util.List;
 
+import tensor.utility.Impronta;
 import tensor.utility.MathUtility;
+import tensor.utility.MathUtility.StrutturaMatrice;
+import tensor.utility.MathUtility.ValoreLogaritmico;
+import tensor.utility.ProdottoMatrici;
 
 /**
  * Classe che rappresenta una matrice bidimensionale quadrata.
@@ -19,6 +24,7 @@ public class Matrice {
 	private static final int SARRUS_DIMENSION = 3;
 	private static final int MIN_RAND_VALUE = 0;
 	private static final int MAX_RAND_VALUE = 100;
+	private static final double RAPPORTO_MAX_BANDA = 0.25; // Massimo rapporto fra ampiezza di banda e dimensione per usare l'algoritmo a banda.
 	
 	private static final String STRING_FORMAT_ELEMENTO = "%15.3f ";
 
@@ -29,6 +35,20 @@ public class Matrice {
 	
 	private double [][] matrice;
 	
+	/*
+	 * Informazioni sulla struttura, calcolate una sola volta alla costruzione.
+	 * La banda inferiore (superiore) è la massima distanza dalla diagonale di un elemento non nullo
+	 * sotto (sopra) la diagonale stessa.
+	 */
+	private StrutturaMatrice struttura;
+	private int banda_inferiore;
+	private int banda_superiore;
+	
+	private byte [] impronta; // Impronta degli elementi, calcolata alla prima richiesta.
+	
+	// TRUE se gli elementi sono un'area di lavoro temporanea, che gli algoritmi possono sovrascrivere.
+	private boolean elementi_temporanei;
+	
 	/**
 	 * Costruttore che istanzia un oggetto Matrice dato in ingresso una List bidimensionale
 	 * contenente oggetti wrapper Double. Questo particolare costruttore è comodo per costruire
@@ -42,25 +62,17 @@ public class Matrice {
 	 * @throws IllegalArgumentException Se la matrice fornita come parametro è degenere o non quadrata.
 	 */
 	public Matrice(List<List<Double>> matrice_listata) throws IllegalArgumentException {
-		if (matrice_listata.size() == 0 || matrice_listata.get(FIRST_ELEMENT).size() == 0) {
-			// La matrice è degenere (non contiene righe o colonne ben definite).
-			throw new IllegalArgumentException(EXCEPTION_MATRICE_VUOTA);
-			
-		} else if (matrice_listata.size() != matrice_listata.get(FIRST_ELEMENT).size()) {
-			// La matrice fornita non è quadrata
-			throw new IllegalArgumentException(EXCEPTION_MATRICE_NON_QUADRATA);
-			
-		} else {
-			/*
-			 * Opero la conversione da List ad Array.
-			 */
-			this.matrice = new double [matrice_listata.size()][matrice_listata.size()];
-			for (int i = 0; i < matrice.length; i++) {
-				for (int j = 0; j < matrice[0].length; j++) {
-					this.matrice[i][j] = matrice_listata.get(i).get(j);
-				}
+		verificaMatriceListata(matrice_listata);
+		/*
+		 * Opero la conversione da List ad Array.
+		 */
+		this.matrice = new double [matrice_listata.size()][matrice_listata.size()];
+		for (int i = 0; i < matrice.length; i++) {
+			for (int j = 0; j < matrice[0].length; j++) {
+				this.matrice[i][j] = matrice_listata.get(i).get(j);
 			}
 		}
+		this.classificaStruttura();
 	}
 	
 	/**
@@ -81,6 +93,125 @@ public class Matrice {
 			
 		} else {
 			this.matrice = matrice;
+			this.classificaStruttura();
+		}
+	}
+	
+	/**
+	 * Costruttore riservato alle sottoclassi che adottano una rappresentazione interna differente
+	 * dall'array bidimensionale. Tali sottoclassi devono ridefinire tutti i metodi pubblici.
+	 */
+	Matrice() {
+		this.matrice = null;
+	}
+	
+	/**
+	 * Costruttore di una "vista" temporanea su un'area di lavoro che contiene gli elementi di un'altra matrice,
+	 * di cui viene copiata la struttura (senza ripetere la classificazione).
+	 * Gli algoritmi di eliminazione possono lavorare direttamente sull'area, senza copiarla: la vista va
+	 * quindi usata per un solo calcolo, e l'area non deve essere condivisa.
+	 * 
+	 * @param area Elementi della matrice, che verranno sovrascritti.
+	 * @param originale Matrice di cui l'area contiene gli elementi.
+	 */
+	Matrice(double [][] area, Matrice originale) {
+		this.matrice = area;
+		this.struttura = originale.struttura;
+		this.banda_inferiore = originale.banda_inferiore;
+		this.banda_superiore = originale.banda_superiore;
+		this.elementi_temporanei = true;
+	}
+	
+	/**
+	 * Metodo che classifica la struttura della matrice con un'unica scansione degli elementi, misurando
+	 * le ampiezze di banda e verificando la simmetria.
+	 */
+	private void classificaStruttura() {
+		int banda_inf = 0, banda_sup = 0;
+		boolean simmetrica = true;
+		for (int i = 0; i < matrice.length; i++) {
+			for (int j = 0; j < matrice.length; j++) {
+				if (matrice[i][j] != 0) {
+					if (i > j) {
+						banda_inf = Math.max(banda_inf, i - j);
+					} else {
+						banda_sup = Math.max(banda_sup, j - i);
+					}
+				}
+				if (j > i && simmetrica && matrice[i][j] != matrice[j][i]) {
+					simmetrica = false;
+				}
+			}
+		}
+		this.impostaStruttura(banda_inf, banda_sup, simmetrica);
+	}
+	
+	/**
+	 * Metodo che memorizza la struttura della matrice a partire dalle ampiezze di banda e dalla simmetria.
+	 * E' utilizzato anche dalle sottoclassi, che effettuano la scansione sulla propria rappresentazione interna.
+	 * 
+	 * @param banda_inf Ampiezza della banda sotto la diagonale.
+	 * @param banda_sup Ampiezza della banda sopra la diagonale.
+	 * @param simmetrica TRUE se la matrice è simmetrica.
+	 */
+	void impostaStruttura(int banda_inf, int banda_sup, boolean simmetrica) {
+		this.banda_inferiore = banda_inf;
+		this.banda_superiore = banda_sup;
+		if (banda_inf == 0 && banda_sup == 0) {
+			this.struttura = StrutturaMatrice.DIAGONALE;
+		} else if (banda_inf == 0) {
+			this.struttura = StrutturaMatrice.TRIANGOLARE_SUPERIORE;
+		} else if (banda_sup == 0) {
+			this.struttura = StrutturaMatrice.TRIANGOLARE_INFERIORE;
+		} else if (banda_inf + banda_sup + 1 <= RAPPORTO_MAX_BANDA * this.getDimensione()) {
+			this.struttura = StrutturaMatrice.A_BANDA;
+		} else if (simmetrica) {
+			this.struttura = StrutturaMatrice.SIMMETRICA;
+		} else {
+			this.struttura = StrutturaMatrice.GENERICA;
+		}
+	}
+	
+	/**
+	 * Restituisce la struttura della matrice, calcolata alla costruzione.
+	 */
+	public StrutturaMatrice getStruttura() {
+		return this.struttura;
+	}
+	
+	/**
+	 * Verifica che una matrice fornita come List bidimensionale sia quadrata e non degenere.
+	 * 
+	 * @param matrice_listata La Matrice come List bidimensionale di Double.
+	 * @throws IllegalArgumentException Se la matrice è degenere o non quadrata.
+	 */
+	static void verificaMatriceListata(List<List<Double>> matrice_listata) throws IllegalArgumentException {
+		if (matrice_listata.size() == 0 || matrice_listata.get(FIRST_ELEMENT).size() == 0) {
+			// La matrice è degenere (non contiene righe o colonne ben definite).
+			throw new IllegalArgumentException(EXCEPTION_MATRICE_VUOTA);
+			
+		} else if (matrice_listata.size() != matrice_listata.get(FIRST_ELEMENT).size()) {
+			// La matrice fornita non è quadrata
+			throw new IllegalArgumentException(EXCEPTION_MATRICE_NON_QUADRATA);
+		}
+	}
+	
+	/**
+	 * Metodo che verifica che gli elementi, forniti in ordine di riga, formino una matrice quadrata non
+	 * degenere della dimensione indicata.
+	 * 
+	 * @param dimensione Numero di righe della matrice.
+	 * @param elementi Elementi della matrice, in ordine di riga.
+	 * @throws IllegalArgumentException Se la matrice è degenere o non quadrata.
+	 */
+	static void verificaMatriceLineare(int dimensione, int [] elementi) throws IllegalArgumentException {
+		if (dimensione == 0 || elementi.length == 0) {
+			// La matrice è degenere (non contiene righe o colonne ben definite).
+			throw new IllegalArgumentException(EXCEPTION_MATRICE_VUOTA);
+			
+		} else if ((long) dimensione * dimensione != elementi.length) {
+			// La matrice fornita non è quadrata
+			throw new IllegalArgumentException(EXCEPTION_MATRICE_NON_QUADRATA);
 		}
 	}
 	
@@ -123,7 +254,7 @@ public class Matrice {
 
 	/**
 	 * Metodo che calcola il determinante della matrice scegliendo opportunamente di volta in volta
-	 * il metodo più conveniente in funzione della dimensione della matrice.
+	 * il metodo più conveniente in funzione della dimensione e della struttura della matrice.
 	 * 
 	 * @return Determinante della matrice.
 	 */
@@ -140,40 +271,244 @@ public class Matrice {
 			return matrice[0][0] * matrice[1][1] - matrice[1][0] * matrice[0][1];
 		case SARRUS_DIMENSION:
 			return this.calcolaDeterminanteSarrus();
+		default:
+			return this.calcolaDeterminantePerStruttura();
+		}
+	}
+	
+	/**
+	 * Metodo che sceglie l'algoritmo per il determinante sulla base della struttura della matrice.
+	 * 
+	 * @return Determinante della matrice.
+	 */
+	private double calcolaDeterminantePerStruttura() {
+		switch (this.struttura) {
+		case DIAGONALE:
+		case TRIANGOLARE_SUPERIORE:
+		case TRIANGOLARE_INFERIORE:
+			return this.calcolaDeterminanteDiagonale();
+		case A_BANDA:
+			return this.calcolaDeterminanteBanda();
+		case SIMMETRICA:
+			double det = this.calcolaDeterminanteCholesky();
+			if (!Double.isNaN(det)) {
+				return det;
+			}
+			// La matrice non è definita positiva: utilizzo l'algoritmo generico
+			return this.calcolaDeterminanteGauss();
+		case GENERICA:
 		default:
 			return this.calcolaDeterminanteGauss();
 		}
 	}
 	
 	/**
-	 * Metodo che implementa il calcolo del determinante attraverso l'algoritmo di eliminazione di Gauss.
+	 * Metodo che calcola il determinante di una matrice triangolare (o diagonale) come prodotto
+	 * degli elementi sulla diagonale. Ha costo lineare nella dimensione.
 	 * 
 	 * @return Determinante.
 	 */
-	private double calcolaDeterminanteGauss() {
-		double determinante = 1;
-		for (int k = 0; k < matrice.length; k++) {
-			// Riga di riferimento
-			
-			if (MathUtility.isZero(matrice[k][k]))
-				return 0; // Velocizza il calcolo in caso in cui un pivot sia nullo -> determinante nullo.
+	private double calcolaDeterminanteDiagonale() {
+		double det = 1;
+		for (int i = 0; i < matrice.length; i++) {
+			det *= matrice[i][i];
+		}
+		return det;
+	}
+	
+	/**
+	 * Metodo che calcola il determinante di una matrice a banda attraverso l'eliminazione di Gauss con
+	 * pivoting parziale, limitata agli elementi della banda.
+	 * La banda è copiata in un array compatto in cui la riga i contiene le colonne da (i - banda_inferiore)
+	 * a (i + banda_inferiore + banda_superiore): lo spazio aggiuntivo a destra accoglie il riempimento
+	 * generato dagli scambi di riga. Il costo è O(n * b^2), dove b è l'ampiezza della banda.
+	 * 
+	 * @return Determinante.
+	 */
+	private double calcolaDeterminanteBanda() {
+		int n = matrice.length;
+		int l = banda_inferiore;
+		int larghezza = 2 * l + banda_superiore + 1;
+		double [][] banda = new double [n][larghezza];
+		for (int i = 0; i < n; i++) {
+			for (int j = Math.max(0, i - l); j <= Math.min(n - 1, i + banda_superiore); j++) {
+				banda[i][j - i + l] = matrice[i][j];
+			}
+		}
+		
+		double det = 1;
+		for (int k = 0; k < n; k++) {
+			// Il pivot va cercato solo fra le righe che hanno elementi non nulli nella colonna k
+			int ultima_riga = Math.min(n - 1, k + l);
+			int riga_pivot = k;
+			for (int i = k + 1; i <= ultima_riga; i++) {
+				if (Math.abs(banda[i][k - i + l]) > Math.abs(banda[riga_pivot][k - riga_pivot + l])) {
+					riga_pivot = i;
+				}
+			}
+			double pivot = banda[riga_pivot][k - riga_pivot + l];
+			if (MathUtility.isZero(pivot)) {
+				return 0;
+			}
+			int ultima_colonna = Math.min(n - 1, k + l + banda_superiore);
+			if (riga_pivot != k) {
+				// Scambio gli elementi delle due righe dalla colonna k in poi
+				for (int j = k; j <= ultima_colonna; j++) {
+					double temp = banda[k][j - k + l];
+					banda[k][j - k + l] = banda[riga_pivot][j - riga_pivot + l];
+					banda[riga_pivot][j - riga_pivot + l] = temp;
+				}
+				det = -det;
+			}
+			det *= pivot;
 			
-			determinante *= matrice[k][k]; // Moltiplico il determinante per l'elemento sulla diagonale
-			for (int i = k + 1; i < matrice.length; i++) {
-				// Riga da modificare
-				
-				if (!MathUtility.isZero(matrice[i][k])) { // Evito il denominatore nullo.
-					double coeff = - matrice[k][k] / matrice[i][k]; // Coefficiente per cui moltiplicare la riga
-					for (int j = i; j < matrice.length; j++) {
-						// Scorro su tutta la riga
-						matrice[i][j] = matrice[i][j] * coeff + matrice[k][j];
+			for (int i = k + 1; i <= ultima_riga; i++) {
+				double coeff = banda[i][k - i + l] / pivot;
+				if (!MathUtility.isZero(coeff)) {
+					for (int j = k + 1; j <= ultima_colonna; j++) {
+						banda[i][j - i + l] -= coeff * banda[k][j - k + l];
 					}
 				}
 			}
 		}
+		return det;
+	}
+	
+	/**
+	 * Metodo che calcola il determinante di una matrice simmetrica attraverso la decomposizione di Cholesky
+	 * (A = L * L^T), che richiede circa metà delle operazioni dell'eliminazione di Gauss.
+	 * La decomposizione esiste solo per matrici definite positive: se durante il calcolo si incontra un
+	 * elemento diagonale non positivo, il metodo restituisce NaN per segnalare che occorre un algoritmo diverso.
+	 * 
+	 * @return Determinante, oppure NaN se la matrice non è definita positiva.
+	 */
+	private double calcolaDeterminanteCholesky() {
+		int n = matrice.length;
+		double [][] l = new double [n][];
+		double det = 1;
+		for (int i = 0; i < n; i++) {
+			l[i] = new double [i + 1];
+			for (int j = 0; j <= i; j++) {
+				double somma = matrice[i][j];
+				for (int k = 0; k < j; k++) {
+					somma -= l[i][k] * l[j][k];
+				}
+				if (i == j) {
+					if (somma <= 0) {
+						return Double.NaN;
+					}
+					l[i][i] = Math.sqrt(somma);
+					det *= somma; // det(A) = prodotto dei quadrati degli elementi diagonali di L
+				} else {
+					l[i][j] = somma / l[j][j];
+				}
+			}
+		}
+		return det;
+	}
+	
+	/**
+	 * Metodo che implementa il calcolo del determinante attraverso l'algoritmo di eliminazione di Gauss
+	 * con pivoting parziale: il determinante è il prodotto dei pivot, con il segno cambiato a ogni scambio di righe.
+	 * 
+	 * @return Determinante.
+	 */
+	private double calcolaDeterminanteGauss() {
+		// L'eliminazione opera su una copia, in modo che la struttura calcolata alla costruzione resti valida.
+		double [][] copia = this.elementi_temporanei ? this.matrice : copiaElementi(this.matrice);
+		int segno = eliminaConPivot(copia);
+		double determinante = segno;
+		for (int k = 0; segno != 0 && k < copia.length; k++) {
+			determinante *= copia[k][k];
+		}
 		return determinante;
 	}
 
+	/**
+	 * Metodo che calcola il logaritmo del valore assoluto del determinante e il suo segno, attraverso
+	 * l'eliminazione di Gauss con pivoting parziale.
+	 * Invece di moltiplicare fra loro gli elementi della diagonale (operazione che per matrici grandi
+	 * porta rapidamente a un overflow) vengono sommati i loro logaritmi, mentre il segno è tenuto a parte.
+	 * L'eliminazione opera su una copia, per cui la matrice non viene modificata.
+	 * 
+	 * @return Determinante in forma logaritmica.
+	 */
+	public ValoreLogaritmico calcolaLogDeterminante() {
+		int n = matrice.length;
+		double [][] triangolare = this.matrice;
+		int segno = 1;
+		if (!this.struttura.isTriangolare()) {
+			triangolare = this.elementi_temporanei ? this.matrice : copiaElementi(this.matrice);
+			segno = eliminaConPivot(triangolare);
+		}
+		
+		// Il determinante è il prodotto degli elementi diagonali della matrice triangolare
+		double log_det = 0;
+		for (int k = 0; segno != 0 && k < n; k++) {
+			if (MathUtility.isZero(triangolare[k][k])) {
+				return ValoreLogaritmico.ZERO;
+			}
+			if (triangolare[k][k] < 0) {
+				segno = -segno;
+			}
+			log_det += Math.log(Math.abs(triangolare[k][k]));
+		}
+		return (segno == 0) ? ValoreLogaritmico.ZERO : new ValoreLogaritmico(segno, log_det);
+	}
+	
+	/**
+	 * Metodo che riduce la matrice in forma triangolare superiore attraverso l'eliminazione di Gauss con
+	 * pivoting parziale, lavorando direttamente sull'array fornito. Al termine la diagonale contiene i pivot.
+	 * 
+	 * @param a Elementi della matrice, che vengono sovrascritti.
+	 * @return Segno della permutazione delle righe (1 o -1), oppure 0 se la matrice è singolare.
+	 */
+	private static int eliminaConPivot(double [][] a) {
+		int n = a.length;
+		int segno = 1;
+		for (int k = 0; k < n; k++) {
+			// Cerco il pivot di modulo massimo nella colonna k
+			int riga_pivot = k;
+			for (int i = k + 1; i < n; i++) {
+				if (Math.abs(a[i][k]) > Math.abs(a[riga_pivot][k])) {
+					riga_pivot = i;
+				}
+			}
+			if (MathUtility.isZero(a[riga_pivot][k])) {
+				return 0; // Colonna nulla -> determinante nullo.
+			}
+			if (riga_pivot != k) {
+				// Lo scambio di due righe cambia il segno del determinante
+				double [] temp = a[k];
+				a[k] = a[riga_pivot];
+				a[riga_pivot] = temp;
+				segno = -segno;
+			}
+			
+			double pivot = a[k][k];
+			for (int i = k + 1; i < n; i++) {
+				if (!MathUtility.isZero(a[i][k])) {
+					double coeff = a[i][k] / pivot;
+					for (int j = k + 1; j < n; j++) {
+						a[i][j] -= coeff * a[k][j];
+					}
+				}
+			}
+		}
+		return segno;
+	}
+
+	/**
+	 * Restituisce una copia degli elementi, su cui gli algoritmi di eliminazione possono lavorare.
+	 */
+	private static double [][] copiaElementi(double [][] elementi) {
+		double [][] copia = new double [elementi.length][];
+		for (int i = 0; i < elementi.length; i++) {
+			copia[i] = elementi[i].clone();
+		}
+		return copia;
+	}
+	
 	/**
 	 * Metodo che implementa il calcolo del determinante attraverso l'algoritmo di Sarrus.
 	 * 
@@ -199,7 +534,7 @@ public class Matrice {
 	 * @return Determinante.
 	 */
 	private double calcolaDeterminanteLaplace(double [][] matr) {
-		double det = 1;
+		double det = 0;
 		if (matr.length == 1) {
 			return matr[0][0];
 		} else {
@@ -239,6 +574,82 @@ public class Matrice {
 		return minore;
 	}
 	
+	/**
+	 * Metodo che calcola il prodotto righe per colonne fra questa matrice e quella fornita.
+	 * Per matrici grandi il calcolo è suddiviso fra più thread (vedi ProdottoMatrici).
+	 * 
+	 * @param altra Matrice per cui moltiplicare (a destra).
+	 * @return Nuova matrice prodotto.
+	 * @throws IllegalArgumentException Se le due matrici hanno dimensioni differenti.
+	 */
+	public Matrice moltiplica(Matrice altra) throws IllegalArgumentException {
+		return new Matrice(ProdottoMatrici.moltiplica(this.getElementi(), altra.getElementi()));
+	}
+	
+	/**
+	 * Metodo che calcola il prodotto di una catena di matrici, nell'ordine in cui sono fornite.
+	 * 
+	 * @param catena Matrici da moltiplicare, tutte della stessa dimensione.
+	 * @return Nuova matrice prodotto.
+	 * @throws IllegalArgumentException Se la catena è vuota o le dimensioni delle matrici sono differenti.
+	 */
+	public static Matrice moltiplicaCatena(List<Matrice> catena) throws IllegalArgumentException {
+		List<double [][]> elementi = new ArrayList<double [][]>(catena.size());
+		for (Matrice m : catena) {
+			elementi.add(m.getElementi());
+		}
+		return new Matrice(ProdottoMatrici.moltiplicaCatena(elementi));
+	}
+	
+	/**
+	 * Restituisce l'impronta (hash) degli elementi della matrice, calcolata alla prima richiesta.
+	 * Matrici con gli stessi elementi hanno la stessa impronta, indipendentemente dalla rappresentazione:
+	 * l'impronta comprende soltanto la dimensione e gli elementi non nulli con la loro posizione.
+	 * L'array restituito non deve essere modificato.
+	 * 
+	 * @return Impronta (32 byte).
+	 */
+	public byte [] getImpronta() {
+		if (this.impronta == null) {
+			Impronta calcolo = new Impronta();
+			this.aggiungiElementiImpronta(calcolo);
+			this.impronta = calcolo.aggiungiDimensione(this.getDimensione()).calcola();
+		}
+		return this.impronta;
+	}
+	
+	/**
+	 * Aggiunge all'impronta gli elementi non nulli della matrice, in ordine di riga.
+	 * Le sottoclassi lo ridefiniscono per percorrere la propria rappresentazione senza espanderla.
+	 * 
+	 * @param calcolo Impronta in corso di calcolo.
+	 */
+	void aggiungiElementiImpronta(Impronta calcolo) {
+		int n = this.matrice.length;
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				if (this.matrice[i][j] != 0) {
+					calcolo.aggiungiElemento(i * n + j, this.matrice[i][j]);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Restituisce gli elementi della matrice come array bidimensionale, senza copiarli.
+	 * L'array non deve essere modificato.
+	 */
+	double [][] getElementi() {
+		return this.matrice;
+	}
+	
+	/**
+	 * Restituisce una stima della memoria (in byte) occupata dagli elementi della matrice.
+	 */
+	long getOccupazioneStimata() {
+		return (long) Double.BYTES * this.matrice.length * this.matrice.length;
+	}
+	
 	/**
 	 * Restituisce la dimensione di riga o colonna della Matrice.
 	 * I due valori sono coincidenti poiché la matrice è quadrata.
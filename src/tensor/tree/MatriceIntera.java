@@ -0,0 +1,360 @@
+package tensor.tree;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import tensor.utility.Impronta;
+import tensor.utility.MathUtility;
+import tensor.utility.MathUtility.ValoreLogaritmico;
+
+/**
+ * Classe che rappresenta una matrice quadrata densa i cui elementi sono numeri interi.
+ * Gli elementi sono memorizzati riga per riga in un unico array del tipo intero più piccolo che li
+ * contiene tutti (byte, short o int), per cui la matrice occupa da 2 a 8 volte meno memoria di una
+ * Matrice di double.
+ *
+ * I calcoli non avvengono sulla rappresentazione compatta: gli elementi vengono convertiti in double
+ * all'interno di un'area di lavoro allocata per il singolo calcolo, e gli algoritmi di Matrice operano
+ * direttamente su di essa, senza ulteriori copie. Al termine del calcolo l'area viene rilasciata, per cui
+ * la memoria in double è occupata solo per la durata di un determinante.
+ *
+ * @author Michele Dusi <michele.dusi.it@ieee.org>
+ *
+ */
+public class MatriceIntera extends Matrice {
+
+	/**
+	 * Tipo primitivo con cui sono memorizzati gli elementi.
+	 */
+	public static enum TipoElementi {
+		BYTE(Byte.BYTES), SHORT(Short.BYTES), INT(Integer.BYTES);
+
+		private final int byte_per_elemento;
+
+		private TipoElementi(int _byte_per_elemento) {
+			this.byte_per_elemento = _byte_per_elemento;
+		}
+
+		/**
+		 * Restituisce il tipo più piccolo che contiene tutti i valori nell'intervallo [minimo, massimo].
+		 */
+		public static TipoElementi perIntervallo(int minimo, int massimo) {
+			if (minimo >= Byte.MIN_VALUE && massimo <= Byte.MAX_VALUE) {
+				return BYTE;
+			} else if (minimo >= Short.MIN_VALUE && massimo <= Short.MAX_VALUE) {
+				return SHORT;
+			} else {
+				return INT;
+			}
+		}
+	}
+
+	private static final String EXCEPTION_VALORE_NON_RAPPRESENTABILE = "Il valore %s non è rappresentabile come %s.";
+
+	private final int dimensione;
+	private final TipoElementi tipo;
+	// Solo l'array corrispondente al tipo è istanziato.
+	private final byte [] elementi_byte;
+	private final short [] elementi_short;
+	private final int [] elementi_int;
+
+	/**
+	 * Costruttore che istanzia una MatriceIntera data in ingresso una List bidimensionale di Double,
+	 * memorizzandone gli elementi con il tipo indicato.
+	 *
+	 * @param matrice_listata La Matrice come List bidimensionale di Double.
+	 * @param _tipo Tipo con cui memorizzare gli elementi (vedi TipoElementi.perIntervallo).
+	 * @throws IllegalArgumentException Se la matrice è degenere o non quadrata, o se un elemento non è
+	 * un intero rappresentabile con il tipo indicato.
+	 */
+	public MatriceIntera(List<List<Double>> matrice_listata, TipoElementi _tipo) throws IllegalArgumentException {
+		super();
+		verificaMatriceListata(matrice_listata);
+		this.dimensione = matrice_listata.size();
+		this.tipo = _tipo;
+		this.elementi_byte = (tipo == TipoElementi.BYTE) ? new byte [dimensione * dimensione] : null;
+		this.elementi_short = (tipo == TipoElementi.SHORT) ? new short [dimensione * dimensione] : null;
+		this.elementi_int = (tipo == TipoElementi.INT) ? new int [dimensione * dimensione] : null;
+
+		int k = 0;
+		for (List<Double> riga : matrice_listata) {
+			for (double valore : riga) {
+				int intero = (int) valore;
+				if (intero != valore || TipoElementi.perIntervallo(intero, intero).compareTo(tipo) > 0) {
+					throw new IllegalArgumentException(String.format(EXCEPTION_VALORE_NON_RAPPRESENTABILE, valore, tipo));
+				}
+				switch (tipo) {
+				case BYTE:
+					this.elementi_byte[k] = (byte) intero;
+					break;
+				case SHORT:
+					this.elementi_short[k] = (short) intero;
+					break;
+				case INT:
+					this.elementi_int[k] = intero;
+					break;
+				}
+				k++;
+			}
+		}
+		this.classificaStruttura();
+	}
+
+	/**
+	 * Costruttore che istanzia una MatriceIntera a partire dagli elementi in ordine di riga, memorizzandoli
+	 * con il tipo indicato. Evita la costruzione della List bidimensionale durante la lettura dei file.
+	 *
+	 * @param _dimensione Dimensione della matrice.
+	 * @param elementi Elementi della matrice, in ordine di riga (dimensione x dimensione valori).
+	 * @param _tipo Tipo con cui memorizzare gli elementi (vedi TipoElementi.perIntervallo).
+	 * @throws IllegalArgumentException Se la matrice è degenere o non quadrata, o se un elemento non è
+	 * rappresentabile con il tipo indicato.
+	 */
+	public MatriceIntera(int _dimensione, int [] elementi, TipoElementi _tipo) throws IllegalArgumentException {
+		super();
+		verificaMatriceLineare(_dimensione, elementi);
+		this.dimensione = _dimensione;
+		this.tipo = _tipo;
+		this.elementi_byte = (tipo == TipoElementi.BYTE) ? new byte [elementi.length] : null;
+		this.elementi_short = (tipo == TipoElementi.SHORT) ? new short [elementi.length] : null;
+		this.elementi_int = (tipo == TipoElementi.INT) ? elementi.clone() : null;
+		for (int k = 0; k < elementi.length; k++) {
+			if (TipoElementi.perIntervallo(elementi[k], elementi[k]).compareTo(tipo) > 0) {
+				throw new IllegalArgumentException(String.format(EXCEPTION_VALORE_NON_RAPPRESENTABILE, elementi[k], tipo));
+			}
+			switch (tipo) {
+			case BYTE:
+				this.elementi_byte[k] = (byte) elementi[k];
+				break;
+			case SHORT:
+				this.elementi_short[k] = (short) elementi[k];
+				break;
+			case INT:
+				break;
+			}
+		}
+		this.classificaStruttura();
+	}
+
+	/**
+	 * Costruttore che rilegge una matrice scritta con {@link #scriviElementi(ByteBuffer)}.
+	 *
+	 * @param _dimensione Dimensione della matrice.
+	 * @param _tipo Tipo con cui sono memorizzati gli elementi.
+	 * @param sorgente Buffer posizionato sul primo elemento, che viene consumato.
+	 */
+	MatriceIntera(int _dimensione, TipoElementi _tipo, ByteBuffer sorgente) {
+		super();
+		this.dimensione = _dimensione;
+		this.tipo = _tipo;
+		this.elementi_byte = (tipo == TipoElementi.BYTE) ? new byte [dimensione * dimensione] : null;
+		this.elementi_short = (tipo == TipoElementi.SHORT) ? new short [dimensione * dimensione] : null;
+		this.elementi_int = (tipo == TipoElementi.INT) ? new int [dimensione * dimensione] : null;
+		switch (tipo) {
+		case BYTE:
+			sorgente.get(this.elementi_byte);
+			break;
+		case SHORT:
+			sorgente.asShortBuffer().get(this.elementi_short);
+			sorgente.position(sorgente.position() + this.elementi_short.length * Short.BYTES);
+			break;
+		case INT:
+			sorgente.asIntBuffer().get(this.elementi_int);
+			sorgente.position(sorgente.position() + this.elementi_int.length * Integer.BYTES);
+			break;
+		}
+		this.classificaStruttura();
+	}
+
+	/**
+	 * Metodo che classifica la struttura della matrice, come in Matrice, leggendo la rappresentazione compatta.
+	 */
+	private void classificaStruttura() {
+		int banda_inf = 0, banda_sup = 0;
+		boolean simmetrica = true;
+		for (int i = 0; i < dimensione; i++) {
+			for (int j = 0; j < dimensione; j++) {
+				int valore = this.getValore(i * dimensione + j);
+				if (valore != 0) {
+					if (i > j) {
+						banda_inf = Math.max(banda_inf, i - j);
+					} else {
+						banda_sup = Math.max(banda_sup, j - i);
+					}
+				}
+				if (j > i && simmetrica && valore != this.getValore(j * dimensione + i)) {
+					simmetrica = false;
+				}
+			}
+		}
+		this.impostaStruttura(banda_inf, banda_sup, simmetrica);
+	}
+
+	/**
+	 * Aggiunge all'impronta gli elementi non nulli leggendo direttamente la rappresentazione compatta.
+	 */
+	@Override
+	void aggiungiElementiImpronta(Impronta calcolo) {
+		for (int k = 0; k < dimensione * dimensione; k++) {
+			int valore = this.getValore(k);
+			if (valore != 0) {
+				calcolo.aggiungiElemento(k, valore);
+			}
+		}
+	}
+
+	/**
+	 * Restituisce l'elemento in posizione k (in ordine di riga).
+	 */
+	private int getValore(int k) {
+		switch (tipo) {
+		case BYTE:
+			return this.elementi_byte[k];
+		case SHORT:
+			return this.elementi_short[k];
+		default:
+			return this.elementi_int[k];
+		}
+	}
+
+	/**
+	 * Restituisce il tipo con cui sono memorizzati gli elementi.
+	 */
+	public TipoElementi getTipo() {
+		return this.tipo;
+	}
+
+	/**
+	 * Metodo che converte gli elementi in double, scrivendoli nell'area fornita.
+	 * Il ciclo è ripetuto per ciascun tipo, in modo che la lettura dell'array compatto non richieda
+	 * una scelta per ogni elemento.
+	 */
+	private void espandi(double [][] area) {
+		int k = 0;
+		switch (tipo) {
+		case BYTE:
+			for (int i = 0; i < dimensione; i++) {
+				double [] riga = area[i];
+				for (int j = 0; j < dimensione; j++) {
+					riga[j] = this.elementi_byte[k++];
+				}
+			}
+			break;
+		case SHORT:
+			for (int i = 0; i < dimensione; i++) {
+				double [] riga = area[i];
+				for (int j = 0; j < dimensione; j++) {
+					riga[j] = this.elementi_short[k++];
+				}
+			}
+			break;
+		case INT:
+			for (int i = 0; i < dimensione; i++) {
+				double [] riga = area[i];
+				for (int j = 0; j < dimensione; j++) {
+					riga[j] = this.elementi_int[k++];
+				}
+			}
+			break;
+		}
+	}
+
+	/**
+	 * Restituisce una vista temporanea della matrice, i cui elementi sono convertiti in una nuova area di
+	 * lavoro. La vista va utilizzata per un solo calcolo, che può sovrascriverne gli elementi.
+	 */
+	private Matrice vistaDiLavoro() {
+		double [][] area = new double [dimensione][dimensione];
+		this.espandi(area);
+		return new Matrice(area, this);
+	}
+
+	/**
+	 * Metodo che calcola il determinante della matrice con l'algoritmo richiesto, sull'area di lavoro.
+	 *
+	 * @return Determinante della matrice.
+	 */
+	@Override
+	public double calcolaDeterminante(MathUtility.AlgoritmoPerDeterminante algo) {
+		return this.vistaDiLavoro().calcolaDeterminante(algo);
+	}
+
+	/**
+	 * Metodo che calcola il determinante scegliendo l'algoritmo in base alla dimensione e alla struttura.
+	 *
+	 * @return Determinante della matrice.
+	 */
+	@Override
+	public double calcolaDeterminante() {
+		return this.vistaDiLavoro().calcolaDeterminante();
+	}
+
+	/**
+	 * Metodo che calcola il determinante in forma logaritmica.
+	 *
+	 * @return Determinante in forma logaritmica.
+	 */
+	@Override
+	public ValoreLogaritmico calcolaLogDeterminante() {
+		return this.vistaDiLavoro().calcolaLogDeterminante();
+	}
+
+	/**
+	 * Restituisce una nuova copia degli elementi in forma di double, per le operazioni che ne hanno bisogno.
+	 */
+	@Override
+	double [][] getElementi() {
+		double [][] elementi = new double [dimensione][dimensione];
+		this.espandi(elementi);
+		return elementi;
+	}
+
+	/**
+	 * Scrive gli elementi in forma compatta, in ordine di riga.
+	 * Utilizzato dal GestoreMemoria per spostare la matrice su disco.
+	 */
+	void scriviElementi(ByteBuffer destinazione) {
+		switch (tipo) {
+		case BYTE:
+			destinazione.put(this.elementi_byte);
+			break;
+		case SHORT:
+			destinazione.asShortBuffer().put(this.elementi_short);
+			destinazione.position(destinazione.position() + this.elementi_short.length * Short.BYTES);
+			break;
+		case INT:
+			destinazione.asIntBuffer().put(this.elementi_int);
+			destinazione.position(destinazione.position() + this.elementi_int.length * Integer.BYTES);
+			break;
+		}
+	}
+
+	/**
+	 * Restituisce una stima della memoria (in byte) occupata dagli elementi.
+	 */
+	@Override
+	long getOccupazioneStimata() {
+		return (long) tipo.byte_per_elemento * dimensione * dimensione;
+	}
+
+	/**
+	 * Restituisce la dimensione di riga o colonna della Matrice.
+	 *
+	 * @return Dimensione di una riga/colonna.
+	 */
+	@Override
+	public int getDimensione() {
+		return this.dimensione;
+	}
+
+	/**
+	 * Restituisce una descrizione completa degli elementi della matrice.
+	 *
+	 * @return Matrice sotto forma di Stringa.
+	 */
+	@Override
+	public String toString() {
+		return new Matrice(this.getElementi(), this).toString();
+	}
+
+}
@@ -0,0 +1,519 @@
+package tensor.tree;
+
+import java.util.Arrays;
+import java.util.List;
+
+import tensor.utility.Impronta;
+import tensor.utility.MathUtility;
+import tensor.utility.MathUtility.ValoreLogaritmico;
+
+/**
+ * Classe che rappresenta una matrice quadrata sparsa, ossia composta in prevalenza da elementi nulli.
+ * Gli elementi non nulli sono memorizzati in formato CSR (Compressed Sparse Row): per ogni riga
+ * sono salvati solamente gli indici di colonna e i valori degli elementi diversi da zero.
+ *
+ * Il determinante è calcolato con una fattorizzazione LU sparsa (o come prodotto della diagonale, se la
+ * matrice è triangolare), in modo che il costo dipenda dal numero di elementi non nulli (e dal
+ * riempimento generato dall'eliminazione) piuttosto che dal cubo della dimensione.
+ * L'ordine di eliminazione delle colonne è un'euristica statica basata sul numero di elementi non nulli
+ * di ciascuna colonna, non un ordinamento di minimo riempimento (AMD/COLAMD): su matrici in cui il
+ * riempimento cresce molto durante l'eliminazione il costo può avvicinarsi a quello denso.
+ *
+ * @author Michele Dusi <michele.dusi.it@ieee.org>
+ *
+ */
+public class MatriceSparsa extends Matrice {
+
+	/*
+	 * Soglia per il pivoting parziale: un elemento è accettato come pivot se il suo modulo è almeno
+	 * questa frazione del massimo modulo della colonna. Valori minori favoriscono la sparsità,
+	 * valori maggiori la stabilità numerica.
+	 */
+	private static final double SOGLIA_PIVOT = 0.1;
+
+	private final int dimensione;
+	private final int [] inizio_riga;
+	private final int [] indici_colonna;
+	private final double [] valori;
+
+	/**
+	 * Costruttore che istanzia una MatriceSparsa data in ingresso una List bidimensionale di Double.
+	 * Gli elementi nulli non vengono memorizzati.
+	 *
+	 * @param matrice_listata La Matrice come List bidimensionale di Double.
+	 * @throws IllegalArgumentException Se la matrice fornita come parametro è degenere o non quadrata.
+	 */
+	public MatriceSparsa(List<List<Double>> matrice_listata) throws IllegalArgumentException {
+		super();
+		verificaMatriceListata(matrice_listata);
+		this.dimensione = matrice_listata.size();
+
+		// Primo passaggio: conto gli elementi non nulli
+		int non_nulli = 0;
+		for (List<Double> riga : matrice_listata) {
+			for (double valore : riga) {
+				if (valore != 0) {
+					non_nulli++;
+				}
+			}
+		}
+
+		// Secondo passaggio: riempio le strutture CSR e misuro le ampiezze di banda
+		this.inizio_riga = new int [dimensione + 1];
+		this.indici_colonna = new int [non_nulli];
+		this.valori = new double [non_nulli];
+		int banda_inf = 0, banda_sup = 0;
+		int k = 0;
+		for (int i = 0; i < dimensione; i++) {
+			this.inizio_riga[i] = k;
+			List<Double> riga = matrice_listata.get(i);
+			for (int j = 0; j < dimensione; j++) {
+				double valore = riga.get(j);
+				if (valore != 0) {
+					this.indici_colonna[k] = j;
+					this.valori[k] = valore;
+					k++;
+					if (i > j) {
+						banda_inf = Math.max(banda_inf, i - j);
+					} else {
+						banda_sup = Math.max(banda_sup, j - i);
+					}
+				}
+			}
+		}
+		this.inizio_riga[dimensione] = k;
+		// La simmetria non è verificata: la fattorizzazione LU sparsa non ne trae vantaggio.
+		this.impostaStruttura(banda_inf, banda_sup, false);
+	}
+
+	/**
+	 * Costruttore che istanzia una MatriceSparsa a partire dagli elementi interi in ordine di riga.
+	 * Gli elementi nulli non vengono memorizzati. Evita la costruzione della List bidimensionale durante
+	 * la lettura dei file.
+	 *
+	 * @param _dimensione Dimensione della matrice.
+	 * @param elementi Elementi della matrice, in ordine di riga (dimensione x dimensione valori).
+	 * @throws IllegalArgumentException Se la matrice è degenere o non quadrata.
+	 */
+	public MatriceSparsa(int _dimensione, int [] elementi) throws IllegalArgumentException {
+		super();
+		verificaMatriceLineare(_dimensione, elementi);
+		this.dimensione = _dimensione;
+
+		int non_nulli = 0;
+		for (int valore : elementi) {
+			if (valore != 0) {
+				non_nulli++;
+			}
+		}
+
+		this.inizio_riga = new int [dimensione + 1];
+		this.indici_colonna = new int [non_nulli];
+		this.valori = new double [non_nulli];
+		int banda_inf = 0, banda_sup = 0;
+		int k = 0;
+		for (int i = 0; i < dimensione; i++) {
+			this.inizio_riga[i] = k;
+			for (int j = 0; j < dimensione; j++) {
+				int valore = elementi[i * dimensione + j];
+				if (valore != 0) {
+					this.indici_colonna[k] = j;
+					this.valori[k] = valore;
+					k++;
+					if (i > j) {
+						banda_inf = Math.max(banda_inf, i - j);
+					} else {
+						banda_sup = Math.max(banda_sup, j - i);
+					}
+				}
+			}
+		}
+		this.inizio_riga[dimensione] = k;
+		this.impostaStruttura(banda_inf, banda_sup, false);
+	}
+
+	/**
+	 * Costruttore che istanzia una MatriceSparsa a partire dalle strutture CSR già costruite, che non
+	 * vengono copiate. Utilizzato per rileggere le matrici scritte su disco dal GestoreMemoria.
+	 *
+	 * @param _dimensione Dimensione della matrice.
+	 * @param _inizio_riga Posizione del primo elemento di ciascuna riga (dimensione + 1 valori).
+	 * @param _indici_colonna Indice di colonna di ciascun elemento non nullo.
+	 * @param _valori Valore di ciascun elemento non nullo.
+	 */
+	MatriceSparsa(int _dimensione, int [] _inizio_riga, int [] _indici_colonna, double [] _valori) {
+		super();
+		this.dimensione = _dimensione;
+		this.inizio_riga = _inizio_riga;
+		this.indici_colonna = _indici_colonna;
+		this.valori = _valori;
+		int banda_inf = 0, banda_sup = 0;
+		for (int i = 0; i < dimensione; i++) {
+			for (int k = inizio_riga[i]; k < inizio_riga[i + 1]; k++) {
+				int j = indici_colonna[k];
+				if (i > j) {
+					banda_inf = Math.max(banda_inf, i - j);
+				} else {
+					banda_sup = Math.max(banda_sup, j - i);
+				}
+			}
+		}
+		this.impostaStruttura(banda_inf, banda_sup, false);
+	}
+
+	/**
+	 * Restituisce il numero di elementi non nulli memorizzati.
+	 */
+	public int getNumeroNonNulli() {
+		return this.valori.length;
+	}
+
+	/**
+	 * Restituisce la posizione del primo elemento di ciascuna riga. L'array non deve essere modificato.
+	 */
+	int [] getInizioRiga() {
+		return this.inizio_riga;
+	}
+
+	/**
+	 * Restituisce gli indici di colonna degli elementi non nulli. L'array non deve essere modificato.
+	 */
+	int [] getIndiciColonna() {
+		return this.indici_colonna;
+	}
+
+	/**
+	 * Restituisce i valori degli elementi non nulli. L'array non deve essere modificato.
+	 */
+	double [] getValori() {
+		return this.valori;
+	}
+
+	/**
+	 * Restituisce una stima della memoria (in byte) occupata dalle strutture CSR.
+	 */
+	@Override
+	long getOccupazioneStimata() {
+		return (long) Integer.BYTES * (inizio_riga.length + indici_colonna.length) + (long) Double.BYTES * valori.length;
+	}
+
+	/**
+	 * Restituisce una copia densa della matrice, utilizzata dagli algoritmi che richiedono
+	 * l'accesso diretto a tutti gli elementi.
+	 *
+	 * @return Matrice densa equivalente.
+	 */
+	public Matrice toDensa() {
+		double [][] densa = new double [dimensione][dimensione];
+		for (int i = 0; i < dimensione; i++) {
+			for (int k = inizio_riga[i]; k < inizio_riga[i + 1]; k++) {
+				densa[i][indici_colonna[k]] = valori[k];
+			}
+		}
+		return new Matrice(densa);
+	}
+
+	/**
+	 * Aggiunge all'impronta gli elementi non nulli leggendo direttamente le strutture CSR, senza espanderle.
+	 */
+	@Override
+	void aggiungiElementiImpronta(Impronta calcolo) {
+		for (int i = 0; i < dimensione; i++) {
+			for (int k = inizio_riga[i]; k < inizio_riga[i + 1]; k++) {
+				calcolo.aggiungiElemento(i * dimensione + indici_colonna[k], valori[k]);
+			}
+		}
+	}
+
+	/**
+	 * Restituisce gli elementi della matrice in forma densa, per le operazioni che ne hanno bisogno.
+	 */
+	@Override
+	double [][] getElementi() {
+		return this.toDensa().getElementi();
+	}
+
+	/**
+	 * Metodo che calcola il determinante della matrice con l'algoritmo richiesto.
+	 * Gauss e il calcolo automatico utilizzano la fattorizzazione LU sparsa; gli altri algoritmi
+	 * operano sulla copia densa della matrice.
+	 *
+	 * @return Determinante della matrice.
+	 */
+	@Override
+	public double calcolaDeterminante(MathUtility.AlgoritmoPerDeterminante algo) {
+		switch (algo) {
+		case GAUSS:
+		case AUTOMATICO:
+			return this.calcolaDeterminante();
+		default:
+			return this.toDensa().calcolaDeterminante(algo);
+		}
+	}
+
+	/**
+	 * Metodo che calcola il determinante attraverso la fattorizzazione LU sparsa.
+	 *
+	 * @return Determinante della matrice.
+	 */
+	@Override
+	public double calcolaDeterminante() {
+		return this.calcolaLogDeterminante().getValore();
+	}
+
+	/**
+	 * Metodo che calcola il determinante in forma logaritmica attraverso una fattorizzazione LU sparsa.
+	 *
+	 * Le colonne sono eliminate in ordine crescente di elementi non nulli, contati una sola volta prima
+	 * dell'eliminazione: è un'euristica statica, che non tiene conto del riempimento (fill-in) generato
+	 * durante il calcolo come farebbero AMD o COLAMD. Per ogni colonna il pivot è scelto, fra le righe che
+	 * soddisfano la soglia di pivoting parziale, come quella con meno elementi non nulli (criterio di Markowitz).
+	 * Il segno del determinante tiene conto delle permutazioni di righe e colonne.
+	 *
+	 * @return Determinante in forma logaritmica.
+	 */
+	@Override
+	public ValoreLogaritmico calcolaLogDeterminante() {
+		if (this.getStruttura().isTriangolare()) {
+			return this.calcolaLogDeterminanteDiagonale();
+		}
+		
+		// Copia di lavoro: per ogni riga gli indici di colonna e i valori dei suoi elementi non nulli,
+		// per ogni colonna gli indici delle righe attive in cui compare un elemento non nullo
+		int [][] colonne_riga = new int [dimensione][];
+		double [][] valori_riga = new double [dimensione][];
+		int [] lunghezza_riga = new int [dimensione];
+		int [][] righe_colonna = new int [dimensione][];
+		int [] lunghezza_colonna = new int [dimensione];
+		for (int k = 0; k < indici_colonna.length; k++) {
+			lunghezza_colonna[indici_colonna[k]]++;
+		}
+		for (int j = 0; j < dimensione; j++) {
+			righe_colonna[j] = new int [Math.max(lunghezza_colonna[j], 1)];
+			lunghezza_colonna[j] = 0;
+		}
+		for (int i = 0; i < dimensione; i++) {
+			colonne_riga[i] = Arrays.copyOfRange(indici_colonna, inizio_riga[i], inizio_riga[i + 1]);
+			valori_riga[i] = Arrays.copyOfRange(valori, inizio_riga[i], inizio_riga[i + 1]);
+			lunghezza_riga[i] = colonne_riga[i].length;
+			for (int j : colonne_riga[i]) {
+				righe_colonna[j][lunghezza_colonna[j]++] = i;
+			}
+		}
+
+		// Ordinamento delle colonne per numero crescente di elementi non nulli (counting sort stabile)
+		int [] ordine_colonne = new int [dimensione];
+		int [] inizio_gruppo = new int [dimensione + 2];
+		for (int j = 0; j < dimensione; j++) {
+			inizio_gruppo[lunghezza_colonna[j] + 1]++;
+		}
+		for (int c = 1; c < inizio_gruppo.length; c++) {
+			inizio_gruppo[c] += inizio_gruppo[c - 1];
+		}
+		for (int j = 0; j < dimensione; j++) {
+			ordine_colonne[inizio_gruppo[lunghezza_colonna[j]]++] = j;
+		}
+
+		// Posizione di ciascuna colonna nella riga in corso di aggiornamento (-1 se assente)
+		int [] posizione = new int [dimensione];
+		Arrays.fill(posizione, -1);
+
+		int [] righe_pivot = new int [dimensione];
+		int [] colonne_pivot = new int [dimensione];
+		int segno = 1;
+		double log_det = 0;
+
+		for (int k = 0; k < dimensione; k++) {
+			int colonna = ordine_colonne[k];
+			int [] candidati = righe_colonna[colonna];
+			int numero_candidati = lunghezza_colonna[colonna];
+
+			// Modulo massimo nella colonna, per la soglia di pivoting
+			double massimo = 0;
+			for (int c = 0; c < numero_candidati; c++) {
+				int i = candidati[c];
+				massimo = Math.max(massimo, Math.abs(valori_riga[i][cerca(colonne_riga[i], lunghezza_riga[i], colonna)]));
+			}
+			if (MathUtility.isZero(massimo)) {
+				return ValoreLogaritmico.ZERO; // Colonna nulla -> determinante nullo.
+			}
+
+			// Scelta del pivot: la riga più sparsa fra quelle che superano la soglia
+			int riga_pivot = -1;
+			for (int c = 0; c < numero_candidati; c++) {
+				int i = candidati[c];
+				if (Math.abs(valori_riga[i][cerca(colonne_riga[i], lunghezza_riga[i], colonna)]) >= SOGLIA_PIVOT * massimo
+						&& (riga_pivot < 0 || lunghezza_riga[i] < lunghezza_riga[riga_pivot])) {
+					riga_pivot = i;
+				}
+			}
+
+			int [] colonne_pivot_riga = colonne_riga[riga_pivot];
+			double [] valori_pivot_riga = valori_riga[riga_pivot];
+			int lunghezza_pivot_riga = lunghezza_riga[riga_pivot];
+			double pivot = valori_pivot_riga[cerca(colonne_pivot_riga, lunghezza_pivot_riga, colonna)];
+			if (pivot < 0) {
+				segno = -segno;
+			}
+			log_det += Math.log(Math.abs(pivot));
+			righe_pivot[k] = riga_pivot;
+			colonne_pivot[k] = colonna;
+
+			// La riga pivot esce dalla parte attiva della matrice
+			for (int q = 0; q < lunghezza_pivot_riga; q++) {
+				int j = colonne_pivot_riga[q];
+				lunghezza_colonna[j] = rimuovi(righe_colonna[j], lunghezza_colonna[j], riga_pivot);
+			}
+
+			// Eliminazione sulle sole righe che hanno un elemento non nullo nella colonna pivot
+			while (lunghezza_colonna[colonna] > 0) {
+				int i = righe_colonna[colonna][--lunghezza_colonna[colonna]];
+				int lunghezza = lunghezza_riga[i];
+				for (int p = 0; p < lunghezza; p++) {
+					posizione[colonne_riga[i][p]] = p;
+				}
+				double coeff = valori_riga[i][posizione[colonna]] / pivot;
+				for (int q = 0; q < lunghezza_pivot_riga; q++) {
+					int j = colonne_pivot_riga[q];
+					if (j == colonna) {
+						continue;
+					}
+					if (posizione[j] >= 0) {
+						valori_riga[i][posizione[j]] -= coeff * valori_pivot_riga[q];
+					} else {
+						// Riempimento
+						if (lunghezza == colonne_riga[i].length) {
+							colonne_riga[i] = Arrays.copyOf(colonne_riga[i], 2 * lunghezza + 1);
+							valori_riga[i] = Arrays.copyOf(valori_riga[i], 2 * lunghezza + 1);
+						}
+						colonne_riga[i][lunghezza] = j;
+						valori_riga[i][lunghezza] = -coeff * valori_pivot_riga[q];
+						posizione[j] = lunghezza++;
+						if (lunghezza_colonna[j] == righe_colonna[j].length) {
+							righe_colonna[j] = Arrays.copyOf(righe_colonna[j], 2 * lunghezza_colonna[j]);
+						}
+						righe_colonna[j][lunghezza_colonna[j]++] = i;
+					}
+				}
+				// Compattazione della riga: escono la colonna pivot e gli elementi annullati
+				int rimasti = 0;
+				for (int p = 0; p < lunghezza; p++) {
+					int j = colonne_riga[i][p];
+					double valore = valori_riga[i][p];
+					posizione[j] = -1;
+					if (j == colonna) {
+						continue;
+					}
+					if (MathUtility.isZero(valore)) {
+						lunghezza_colonna[j] = rimuovi(righe_colonna[j], lunghezza_colonna[j], i);
+						continue;
+					}
+					colonne_riga[i][rimasti] = j;
+					valori_riga[i][rimasti] = valore;
+					rimasti++;
+				}
+				lunghezza_riga[i] = rimasti;
+			}
+		}
+
+		// det(A) = sgn(P) * sgn(Q) * prodotto dei pivot
+		if (isPermutazioneDispari(righe_pivot) != isPermutazioneDispari(colonne_pivot)) {
+			segno = -segno;
+		}
+		return new ValoreLogaritmico(segno, log_det);
+	}
+
+	/**
+	 * Metodo che calcola il determinante di una matrice triangolare come prodotto degli elementi
+	 * diagonali, in forma logaritmica.
+	 *
+	 * @return Determinante in forma logaritmica.
+	 */
+	private ValoreLogaritmico calcolaLogDeterminanteDiagonale() {
+		int segno = 1;
+		double log_det = 0;
+		for (int i = 0; i < dimensione; i++) {
+			double diagonale = 0;
+			for (int k = inizio_riga[i]; k < inizio_riga[i + 1]; k++) {
+				if (indici_colonna[k] == i) {
+					diagonale = valori[k];
+				}
+			}
+			if (MathUtility.isZero(diagonale)) {
+				return ValoreLogaritmico.ZERO;
+			}
+			if (diagonale < 0) {
+				segno = -segno;
+			}
+			log_det += Math.log(Math.abs(diagonale));
+		}
+		return new ValoreLogaritmico(segno, log_det);
+	}
+
+	/**
+	 * Restituisce la posizione del valore fra i primi elementi dell'array indicati, o -1 se non compare.
+	 */
+	private static int cerca(int [] array, int lunghezza, int valore) {
+		for (int p = 0; p < lunghezza; p++) {
+			if (array[p] == valore) {
+				return p;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Rimuove il valore dai primi elementi dell'array indicati, sostituendolo con l'ultimo (l'ordine non è mantenuto).
+	 *
+	 * @return Nuovo numero di elementi validi.
+	 */
+	private static int rimuovi(int [] array, int lunghezza, int valore) {
+		int p = cerca(array, lunghezza, valore);
+		if (p < 0) {
+			return lunghezza;
+		}
+		array[p] = array[lunghezza - 1];
+		return lunghezza - 1;
+	}
+
+	/**
+	 * Metodo che stabilisce la parità di una permutazione attraverso il conteggio dei suoi cicli.
+	 *
+	 * @param permutazione Permutazione degli interi da 0 a n-1.
+	 * @return TRUE se la permutazione è dispari.
+	 */
+	private static boolean isPermutazioneDispari(int [] permutazione) {
+		boolean [] visitato = new boolean [permutazione.length];
+		int cicli = 0;
+		for (int i = 0; i < permutazione.length; i++) {
+			if (!visitato[i]) {
+				cicli++;
+				for (int j = i; !visitato[j]; j = permutazione[j]) {
+					visitato[j] = true;
+				}
+			}
+		}
+		return (permutazione.length - cicli) % 2 != 0;
+	}
+
+	/**
+	 * Restituisce la dimensione di riga o colonna della Matrice.
+	 *
+	 * @return Dimensione di una riga/colonna.
+	 */
+	@Override
+	public int getDimensione() {
+		return this.dimensione;
+	}
+
+	/**
+	 * Restituisce una descrizione completa degli elementi della matrice, nulli compresi.
+	 *
+	 * @return Matrice sotto forma di Stringa.
+	 */
+	@Override
+	public String toString() {
+		return this.toDensa().toString();
+	}
+
+}
@@ -1,8 +1,12 @@
 package tensor.tree;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+import tensor.profilazione.EventoAggiuntaFiglio;
+import tensor.utility.Impronta;
+
 /**
  * Classe che rappresenta un nodo nell'albero di Tensori del programma. Ogni nodo contiene i riferimenti
  * ai propri nodi figli, e un flag booleano che identifica il nodo radice.
@@ -17,7 +21,7 @@ public class NodoTensore {
 	
 	private static final String INTRO_NODI_FIGLI = "Nodi Figli:\n";
 	private static final String INTRO_LABEL = "LABEL: %s\n";
-	private static final String INTRO_UNITA = "NODO %s: Unità di tensore = %10.3f";
+	public static final String INTRO_UNITA = "NODO %s: Unità di tensore = %10.3f";
 	
 	private String label;
 	
@@ -25,6 +29,14 @@ public class NodoTensore {
 	private boolean is_root;
 	
 	double unita_tensore;
+	
+	/*
+	 * Flag che indica che almeno un figlio non era ancora caricato al momento dell'aggiunta, per cui
+	 * l'Unità di Tensore dovrà essere aggiornata alla prima richiesta.
+	 */
+	private boolean figli_in_attesa;
+	
+	private String impronta; // Impronta del sottoalbero, calcolata alla prima richiesta.
 
 	/**
 	 * Costruttore che definisce l'etichetta del Nodo e modifica il flag che identifica la radice.
@@ -49,6 +61,7 @@ public class NodoTensore {
 	
 	public void setRoot(boolean _is_root)  {
 		this.is_root = _is_root;
+		this.impronta = null;
 		if (this.is_root) {
 			this.unita_tensore = Double.MAX_VALUE;
 		} else {
@@ -62,6 +75,7 @@ public class NodoTensore {
 	
 	public void setLabel(String _label) {
 		this.label = _label;
+		this.impronta = null;
 	}
 	
 	/**
@@ -79,20 +93,65 @@ public class NodoTensore {
 	 * Il Nodo figlio viene aggiunto solo se non ne è presente già uno con la stessa etichetta fra i figli
 	 * diretti (in questo modo ogni nodo a una rappresentazione univoca), altrimenti viene lanciata una 
 	 * IllegalStateException.
+	 * Se il figlio non è ancora stato caricato (vedi {@link #isCaricato()}), l'aggiornamento dell'Unità
+	 * di Tensore viene rimandato alla prima richiesta del valore.
+	 * L'aggiunta è misurata dall'evento {@link EventoAggiuntaFiglio}.
 	 * 
 	 * @param nuovo_figlio Nuovo nodo da inserire.
 	 */
 	public void aggiungiFiglio(NodoTensore nuovo_figlio) throws IllegalArgumentException {
+		EventoAggiuntaFiglio evento = new EventoAggiuntaFiglio();
+		evento.begin();
 		if (this.contieneLabel(nuovo_figlio.label)) {
 			throw new IllegalArgumentException(String.format(EXCEPTION_LABEL_GIA_PRESENTE, nuovo_figlio.label));
 		} else {
 			this.nodi_figli.add(nuovo_figlio);
-			if (this.is_root) {
-				this.unita_tensore = Math.min(this.unita_tensore, nuovo_figlio.unita_tensore);
+			this.impronta = null;
+			if (nuovo_figlio.isCaricato()) {
+				this.aggiornaUnita(nuovo_figlio.unita_tensore);
 			} else {
-				this.unita_tensore = Math.max(this.unita_tensore, nuovo_figlio.unita_tensore);
+				this.figli_in_attesa = true;
+			}
+		}
+		evento.registra(nuovo_figlio instanceof Tensore, this.nodi_figli.size());
+	}
+	
+	/**
+	 * Aggiorna l'Unità di Tensore con un nuovo valore: il nodo radice ne mantiene il minimo,
+	 * gli altri nodi il massimo.
+	 * 
+	 * @param valore Valore da considerare.
+	 */
+	void aggiornaUnita(double valore) {
+		if (this.is_root) {
+			this.unita_tensore = Math.min(this.unita_tensore, valore);
+		} else {
+			this.unita_tensore = Math.max(this.unita_tensore, valore);
+		}
+	}
+	
+	/**
+	 * Metodo che indica se il sottoalbero del nodo è completamente caricato in memoria.
+	 * 
+	 * @return TRUE se l'Unità di Tensore non richiede ulteriori letture.
+	 */
+	public boolean isCaricato() {
+		return !this.figli_in_attesa;
+	}
+	
+	/**
+	 * Metodo che restituisce il figlio diretto con l'etichetta indicata.
+	 * 
+	 * @param label_da_cercare Etichetta del figlio.
+	 * @return Il nodo figlio, oppure null se non presente.
+	 */
+	public NodoTensore getFiglio(String label_da_cercare) {
+		for (NodoTensore nt : this.nodi_figli) {
+			if (nt.label.equals(label_da_cercare)) {
+				return nt;
 			}
 		}
+		return null;
 	}
 	
 	/**
@@ -113,6 +172,52 @@ public class NodoTensore {
 		return false;
 	}
 	
+	/**
+	 * Restituisce l'impronta strutturale del sottoalbero: un hash calcolato dall'etichetta, dal flag di radice,
+	 * dai contenuti propri del nodo e dalle impronte dei figli (come in un albero di Merkle).
+	 * Due sottoalberi con la stessa impronta hanno quindi gli stessi indici e le stesse Unità di Tensore.
+	 * L'impronta è calcolata alla prima richiesta, ad albero già costruito, e poi conservata.
+	 * 
+	 * @return Impronta in forma esadecimale.
+	 */
+	public String getImpronta() {
+		if (this.impronta == null) {
+			Impronta calcolo = new Impronta();
+			calcolo.aggiungiTesto(this.getClass().getSimpleName());
+			calcolo.aggiungiTesto(this.label);
+			calcolo.aggiungiFlag(this.is_root);
+			this.aggiungiContenutiImpronta(calcolo);
+			for (NodoTensore nt : this.nodi_figli) {
+				calcolo.aggiungiImpronta(nt.getImpronta());
+			}
+			this.impronta = Impronta.inEsadecimale(calcolo.calcola());
+		}
+		return this.impronta;
+	}
+	
+	/**
+	 * Aggiunge all'impronta i contenuti propri del nodo, esclusi i figli.
+	 * Un semplice NodoTensore non ha contenuti propri.
+	 * 
+	 * @param calcolo Impronta in corso di calcolo.
+	 */
+	void aggiungiContenutiImpronta(Impronta calcolo) {
+	}
+	
+	/**
+	 * Invalida l'impronta calcolata, in seguito a una modifica dei contenuti del nodo.
+	 */
+	void invalidaImpronta() {
+		this.impronta = null;
+	}
+	
+	/**
+	 * Restituisce i figli diretti del nodo, nell'ordine di inserimento, come lista non modificabile.
+	 */
+	public List<NodoTensore> getFigli() {
+		return Collections.unmodifiableList(this.nodi_figli);
+	}
+	
 	/**
 	 * Metodo che indica se il NodoTensore considerato è un nodo-radice.
 	 * 
@@ -124,9 +229,17 @@ public class NodoTensore {
 	
 	/**
 	 * Metodo che restituisce l'Unità Tensore calcolata finora.
-	 * Non effettua calcoli poiché il valore viene aggiornato di volta in volta.
+	 * Non effettua calcoli poiché il valore viene aggiornato di volta in volta, a meno che alcuni figli
+	 * non fossero ancora caricati al momento dell'aggiunta: in tal caso il valore viene completato ora.
+	 * Poiché minimo e massimo sono idempotenti, è sufficiente ripetere l'aggiornamento su tutti i figli.
 	 */
 	public double getUnitaTensore() {
+		if (this.figli_in_attesa) {
+			this.figli_in_attesa = false;
+			for (NodoTensore nt : this.nodi_figli) {
+				this.aggiornaUnita(nt.getUnitaTensore());
+			}
+		}
 		return this.unita_tensore;
 	}
 	
@@ -165,7 +278,7 @@ public class NodoTensore {
 	 */
 	public List<String> getListaUnita() {
 		List<String> lista = new ArrayList<String>();
-		lista.add(String.format(INTRO_UNITA, this.label, this.unita_tensore));
+		lista.add(String.format(INTRO_UNITA, this.label, this.getUnitaTensore()));
 		for (NodoTensore nt : this.nodi_figli) {
 			lista.addAll(nt.getListaUnita());
 		}
@@ -0,0 +1,226 @@
+package tensor.tree;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Classe che converte un sottoalbero di NodiTensore in un formato binario compatto e viceversa, per poterlo
+ * trasferire ad un altro processo.
+ *
+ * Il formato elenca i nodi in ordine anticipato; per ogni nodo sono scritti il tipo, il flag di radice,
+ * l'etichetta, le matrici (solo per i Tensori) e il numero di figli, seguiti dai figli stessi.
+ * Ogni matrice è scritta come record nella propria rappresentazione (densa, intera o CSR), preceduto dalla
+ * lunghezza e dal tipo: è lo stesso record con cui il GestoreMemoria sposta le matrici su disco.
+ *
+ * @author Michele Dusi <michele.dusi.it@ieee.org>
+ *
+ */
+public final class SerializzatoreAlbero {
+
+	private static final byte TIPO_NODO = 0;
+	private static final byte TIPO_TENSORE = 1;
+
+	// Tipi dei record delle matrici
+	private static final byte TIPO_DENSA = 0;
+	private static final byte TIPO_SPARSA = 1;
+	private static final byte TIPO_INTERA = 2;
+
+	private static final String EXCEPTION_TIPO_SCONOSCIUTO = "Tipo di nodo sconosciuto: %d.";
+	private static final String EXCEPTION_TIPO_MATRICE_SCONOSCIUTO = "Tipo di matrice sconosciuto: %d.";
+	private static final String EXCEPTION_MATRICE_TROPPO_GRANDE = "La matrice di dimensione %d occupa %d byte e non può essere serializzata.";
+
+	private SerializzatoreAlbero() {};
+
+	/**
+	 * Scrive un sottoalbero sullo stream, una matrice alla volta. I Tensori non ancora caricati vengono letti
+	 * dalla loro sorgente, ma i determinanti delle matrici non vengono calcolati.
+	 *
+	 * @param nodo Radice del sottoalbero.
+	 * @param out Stream su cui scrivere.
+	 * @throws IOException Se la scrittura fallisce.
+	 * @throws IllegalStateException Se una matrice è troppo grande per un singolo record.
+	 */
+	public static void scrivi(NodoTensore nodo, DataOutputStream out) throws IOException, IllegalStateException {
+		boolean is_tensore = nodo instanceof Tensore;
+		out.writeByte(is_tensore ? TIPO_TENSORE : TIPO_NODO);
+		out.writeBoolean(nodo.isRoot());
+		out.writeBoolean(nodo.getLabel() != null);
+		if (nodo.getLabel() != null) {
+			out.writeUTF(nodo.getLabel());
+		}
+		if (is_tensore) {
+			List<Matrice> matrici = ((Tensore) nodo).getMatriciSenzaCalcolo();
+			out.writeInt(matrici.size());
+			for (Matrice m : matrici) {
+				ByteBuffer record = serializzaMatrice(m);
+				out.write(record.array(), 0, record.limit());
+			}
+		}
+		List<NodoTensore> figli = nodo.getFigli();
+		out.writeInt(figli.size());
+		for (NodoTensore nt : figli) {
+			scrivi(nt, out);
+		}
+	}
+
+	/**
+	 * Restituisce una stima del costo di valutazione di un sottoalbero, come somma dei cubi delle dimensioni
+	 * delle matrici. Le matrici dei Tensori non ancora caricati non vengono lette.
+	 *
+	 * @param nodo Radice del sottoalbero.
+	 * @return Costo stimato.
+	 */
+	public static long stimaCosto(NodoTensore nodo) {
+		long costo = (nodo instanceof Tensore) ? ((Tensore) nodo).stimaCosto() : 0;
+		for (NodoTensore nt : nodo.getFigli()) {
+			costo += stimaCosto(nt);
+		}
+		return costo;
+	}
+
+	/**
+	 * Legge un sottoalbero dallo stream, ricostruendo i nodi e calcolando i determinanti delle matrici.
+	 * Le matrici mantengono la rappresentazione con cui sono state scritte.
+	 *
+	 * @param in Stream da cui leggere.
+	 * @return Radice del sottoalbero.
+	 * @throws IOException Se la lettura fallisce o il formato non è valido.
+	 */
+	public static NodoTensore leggi(DataInputStream in) throws IOException {
+		byte tipo = in.readByte();
+		boolean is_root = in.readBoolean();
+		String label = in.readBoolean() ? in.readUTF() : null;
+
+		NodoTensore nodo;
+		switch (tipo) {
+		case TIPO_TENSORE:
+			Tensore tensore = new Tensore();
+			// L'etichetta predefinita va mantenuta come istanza costante, poiché funge da jolly (vedi contieneLabel)
+			if (label == null || !label.equals(Tensore.DEFAULT_LABEL)) {
+				tensore.setLabel(label);
+			}
+			int numero_matrici = in.readInt();
+			for (int k = 0; k < numero_matrici; k++) {
+				byte [] record = new byte [in.readInt()];
+				in.readFully(record);
+				tensore.aggiungiMatrice(deserializzaMatrice(ByteBuffer.wrap(record)));
+			}
+			nodo = tensore;
+			break;
+		case TIPO_NODO:
+			nodo = new NodoTensore(label, is_root);
+			break;
+		default:
+			throw new IOException(String.format(EXCEPTION_TIPO_SCONOSCIUTO, tipo));
+		}
+
+		int numero_figli = in.readInt();
+		for (int i = 0; i < numero_figli; i++) {
+			nodo.aggiungiFiglio(leggi(in));
+		}
+		return nodo;
+	}
+
+	/**
+	 * Metodo che scrive una matrice in un buffer, preceduta dalla lunghezza del record.
+	 * Il record contiene il tipo, la dimensione e gli elementi: tutti, per le matrici dense; il tipo e gli
+	 * elementi compatti, per le matrici intere; le tre strutture CSR, per le matrici sparse.
+	 *
+	 * @return Buffer pronto per la lettura, il cui array contiene esattamente il record.
+	 * @throws IllegalStateException Se il record supera la dimensione massima di un buffer.
+	 */
+	static ByteBuffer serializzaMatrice(Matrice m) throws IllegalStateException {
+		long lunghezza = Byte.BYTES + Integer.BYTES;
+		if (m instanceof MatriceSparsa) {
+			MatriceSparsa ms = (MatriceSparsa) m;
+			lunghezza += Integer.BYTES + (long) Integer.BYTES * (ms.getDimensione() + 1 + ms.getNumeroNonNulli())
+					+ (long) Double.BYTES * ms.getNumeroNonNulli();
+		} else if (m instanceof MatriceIntera) {
+			lunghezza += Byte.BYTES + m.getOccupazioneStimata();
+		} else {
+			lunghezza += (long) Double.BYTES * m.getDimensione() * m.getDimensione();
+		}
+		if (lunghezza > Integer.MAX_VALUE - Integer.BYTES) {
+			throw new IllegalStateException(String.format(EXCEPTION_MATRICE_TROPPO_GRANDE, m.getDimensione(), lunghezza));
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + (int) lunghezza);
+		buffer.putInt((int) lunghezza);
+		if (m instanceof MatriceSparsa) {
+			MatriceSparsa ms = (MatriceSparsa) m;
+			buffer.put(TIPO_SPARSA);
+			buffer.putInt(ms.getDimensione());
+			buffer.putInt(ms.getNumeroNonNulli());
+			for (int x : ms.getInizioRiga()) {
+				buffer.putInt(x);
+			}
+			for (int x : ms.getIndiciColonna()) {
+				buffer.putInt(x);
+			}
+			for (double x : ms.getValori()) {
+				buffer.putDouble(x);
+			}
+		} else if (m instanceof MatriceIntera) {
+			MatriceIntera mi = (MatriceIntera) m;
+			buffer.put(TIPO_INTERA);
+			buffer.putInt(mi.getDimensione());
+			buffer.put((byte) mi.getTipo().ordinal());
+			mi.scriviElementi(buffer);
+		} else {
+			buffer.put(TIPO_DENSA);
+			buffer.putInt(m.getDimensione());
+			for (double [] riga : m.getElementi()) {
+				for (double x : riga) {
+					buffer.putDouble(x);
+				}
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Metodo che ricostruisce una matrice dal record scritto da {@link #serializzaMatrice(Matrice)},
+	 * esclusa la lunghezza iniziale.
+	 *
+	 * @throws IllegalStateException Se il tipo del record non è valido.
+	 */
+	static Matrice deserializzaMatrice(ByteBuffer buffer) throws IllegalStateException {
+		byte tipo = buffer.get();
+		int dim = buffer.getInt();
+		switch (tipo) {
+		case TIPO_SPARSA:
+			int non_nulli = buffer.getInt();
+			int [] inizio_riga = new int [dim + 1];
+			int [] indici_colonna = new int [non_nulli];
+			double [] valori = new double [non_nulli];
+			for (int i = 0; i < inizio_riga.length; i++) {
+				inizio_riga[i] = buffer.getInt();
+			}
+			for (int i = 0; i < non_nulli; i++) {
+				indici_colonna[i] = buffer.getInt();
+			}
+			for (int i = 0; i < non_nulli; i++) {
+				valori[i] = buffer.getDouble();
+			}
+			return new MatriceSparsa(dim, inizio_riga, indici_colonna, valori);
+		case TIPO_INTERA:
+			MatriceIntera.TipoElementi tipo_elementi = MatriceIntera.TipoElementi.values()[buffer.get()];
+			return new MatriceIntera(dim, tipo_elementi, buffer);
+		case TIPO_DENSA:
+			double [][] elementi = new double [dim][dim];
+			for (int i = 0; i < dim; i++) {
+				for (int j = 0; j < dim; j++) {
+					elementi[i][j] = buffer.getDouble();
+				}
+			}
+			return new Matrice(elementi);
+		default:
+			throw new IllegalStateException(String.format(EXCEPTION_TIPO_MATRICE_SCONOSCIUTO, tipo));
+		}
+	}
+
+}
@@ -3,6 +3,11 @@ package tensor.tree;
 import java.util.ArrayList;
 import java.util.List;
 
+import tensor.profilazione.EventoDeterminante;
+import tensor.utility.Impronta;
+import tensor.utility.MathUtility.AlgoritmoPerDeterminante;
+import tensor.utility.MathUtility.ValoreLogaritmico;
+
 /**
  * Classe che rappresenta un Tensore. All'interno dell'albero con cui lavora il programma ogni Tensore
  * è un nodo, per questo motivo la classe è figlia di NodoTensore.
@@ -14,15 +19,36 @@ public class Tensore extends NodoTensore {
 
 	private static final String EXCEPTION_DIMENSIONE_MATRICE_DIFFERENTE = "Non è possibile aggiungere una matrice di questa dimensione al tensore.";
 	private static final String EXCEPTION_TENSORE_PIENO = "Il tensore contiene già il numero corretto di matrici.";
+	private static final String EXCEPTION_TENSORE_VUOTO = "Il tensore non contiene matrici.";
+	private static final String EXCEPTION_ATTESA_INTERROTTA = "Attesa dei determinanti del tensore interrotta.";
+	private static final String EXCEPTION_DETERMINANTE_NON_CALCOLATO = "Il calcolo di almeno un determinante del tensore non è riuscito.";
 	
 	static final String DEFAULT_LABEL = "tensor";
 	
 	private static final String INTRO_MATRICI = "Matrici:\n";
 	
 	private static final String STRING_INDICE = "TENSORE: Indice = %10.3f";
+	private static final String STRING_INDICE_LOGARITMICO = "TENSORE: Indice = %s";
 	
 	private List<Matrice> matrici;
+	private List<Double> determinanti; // Determinanti delle matrici, calcolati una sola volta all'aggiunta.
+	private List<ValoreLogaritmico> log_determinanti; // Gli stessi determinanti in forma logaritmica.
 	private int dimensione;
+	private int determinanti_in_attesa; // Determinanti non ancora calcolati dai thread di lavoro.
+	private boolean calcolo_fallito; // TRUE se almeno un determinante in attesa non è stato calcolato.
+	
+	private CaricatoreMatrici caricatore; // Sorgente delle matrici non ancora lette, null se il tensore è caricato.
+	
+	/*
+	 * Gestione della memoria (vedi GestoreMemoria): se le matrici sono state spostate su disco, la lista
+	 * delle matrici è null e "matrici_scaricate" permette di rileggerle. I determinanti restano in memoria,
+	 * per cui indice e Unità di Tensore non richiedono di rileggere le matrici.
+	 * Questi campi sono letti e modificati solo con il lock del Tensore; le chiamate al GestoreMemoria fatte
+	 * con il lock si limitano ad aggiornarne i conteggi, mentre lo spostamento su disco di altri Tensori
+	 * (che richiede i loro lock) avviene solo dopo averlo rilasciato.
+	 */
+	private GestoreMemoria gestore;
+	private CaricatoreMatrici matrici_scaricate;
 
 	/**
 	 * Costruttore che inizializza il Tensore come vuoto.
@@ -34,6 +60,8 @@ public class Tensore extends NodoTensore {
 	public Tensore() {
 		super(DEFAULT_LABEL);
 		this.matrici = new ArrayList<Matrice>();
+		this.determinanti = new ArrayList<Double>();
+		this.log_determinanti = new ArrayList<ValoreLogaritmico>();
 		this.dimensione = 0;
 	}
 	
@@ -49,6 +77,146 @@ public class Tensore extends NodoTensore {
 	 * @throws IllegalStateException Se il Tensore contiene già il numero massimo di matrici. 
 	 */
 	public void aggiungiMatrice(Matrice nuova_matrice) throws IllegalArgumentException, IllegalStateException {
+		this.aggiungiMatrice(nuova_matrice, true);
+		this.rispettaBudget();
+	}
+	
+	/**
+	 * Aggiunge una matrice al Tensore calcolandone il determinante, come {@link #aggiungiMatrice(Matrice)}.
+	 * 
+	 * @param nuova_matrice L'oggetto Matrice da aggiungere.
+	 * @param modifica FALSE se la matrice era già parte del Tensore (caricamento pigro): l'impronta resta valida.
+	 */
+	private void aggiungiMatrice(Matrice nuova_matrice, boolean modifica) throws IllegalArgumentException, IllegalStateException {
+		double determinante = EventoDeterminante.calcola(nuova_matrice, AlgoritmoPerDeterminante.AUTOMATICO);
+		ValoreLogaritmico log_determinante = calcolaLogDeterminante(nuova_matrice, determinante);
+		synchronized (this) {
+			this.inserisciMatrice(nuova_matrice, modifica);
+			this.determinanti.add(determinante);
+			this.log_determinanti.add(log_determinante);
+			this.aggiornaUnita(determinante);
+		}
+	}
+	
+	/**
+	 * Restituisce il determinante di una matrice in forma logaritmica, a partire da quello già calcolato.
+	 * Se il determinante è rappresentabile come double viene semplicemente convertito; solo se è andato
+	 * in overflow la forma logaritmica viene calcolata con una nuova eliminazione.
+	 * 
+	 * @param matrice Matrice di cui è stato calcolato il determinante.
+	 * @param determinante Determinante della matrice come double.
+	 * @return Determinante in forma logaritmica.
+	 */
+	private static ValoreLogaritmico calcolaLogDeterminante(Matrice matrice, double determinante) {
+		if (isRappresentabile(determinante)) {
+			return ValoreLogaritmico.daDouble(determinante);
+		}
+		return matrice.calcolaLogDeterminante();
+	}
+	
+	/**
+	 * Metodo che aggiunge una matrice al Tensore senza calcolarne il determinante, che dovrà essere
+	 * calcolato in seguito (tipicamente da un altro thread) attraverso {@link #calcolaDeterminanteInAttesa(int, Matrice)}.
+	 * Finché tutti i determinanti non sono stati registrati, il Tensore non risulta caricato e le richieste
+	 * di indice e Unità di Tensore restano in attesa.
+	 * 
+	 * @param nuova_matrice L'oggetto Matrice da aggiungere.
+	 * @return Posizione della matrice all'interno del Tensore.
+	 * @throws IllegalArgumentException Se la Matrice non rispetta le dimensioni del Tensore.
+	 * @throws IllegalStateException Se il Tensore contiene già il numero massimo di matrici.
+	 */
+	public int aggiungiMatriceInAttesa(Matrice nuova_matrice) throws IllegalArgumentException, IllegalStateException {
+		int posizione;
+		synchronized (this) {
+			this.inserisciMatrice(nuova_matrice, true);
+			this.determinanti.add(null);
+			this.log_determinanti.add(null);
+			this.determinanti_in_attesa++;
+			posizione = this.matrici.size() - 1;
+		}
+		this.rispettaBudget();
+		return posizione;
+	}
+	
+	/**
+	 * Calcola e registra il determinante di una matrice aggiunta con {@link #aggiungiMatriceInAttesa(Matrice)},
+	 * aggiornando l'Unità di Tensore. La matrice è conteggiata come terminata anche se il calcolo fallisce:
+	 * in quel caso il Tensore non è più valutabile e le richieste in attesa ricevono un'eccezione.
+	 * Quando tutti i determinanti sono terminati risveglia i thread in attesa.
+	 * 
+	 * @param posizione Posizione della matrice nel Tensore.
+	 * @param matrice Matrice in quella posizione.
+	 */
+	public void calcolaDeterminanteInAttesa(int posizione, Matrice matrice) {
+		boolean calcolato = false;
+		try {
+			double determinante = EventoDeterminante.calcola(matrice, AlgoritmoPerDeterminante.AUTOMATICO);
+			ValoreLogaritmico log_determinante = calcolaLogDeterminante(matrice, determinante);
+			synchronized (this) {
+				this.determinanti.set(posizione, determinante);
+				this.log_determinanti.set(posizione, log_determinante);
+				this.aggiornaUnita(determinante);
+			}
+			calcolato = true;
+		} finally {
+			this.terminaDeterminante(calcolato);
+		}
+	}
+	
+	/**
+	 * Conteggia come terminata, senza calcolarlo, il determinante di una matrice aggiunta con
+	 * {@link #aggiungiMatriceInAttesa(Matrice)}, ad esempio quando la lettura è già fallita.
+	 * Il Tensore non è più valutabile.
+	 * 
+	 */
+	public void abbandonaDeterminante() {
+		this.terminaDeterminante(false);
+	}
+	
+	/**
+	 * Conteggia un determinante in attesa come terminato e, se era l'ultimo, risveglia i thread in attesa.
+	 */
+	private synchronized void terminaDeterminante(boolean calcolato) {
+		if (!calcolato) {
+			this.calcolo_fallito = true;
+		}
+		this.determinanti_in_attesa--;
+		if (this.determinanti_in_attesa == 0) {
+			this.notifyAll();
+		}
+	}
+	
+	/**
+	 * Attende che tutti i determinanti in corso di calcolo siano terminati.
+	 * 
+	 * @throws IllegalStateException Se il thread viene interrotto durante l'attesa, o se il calcolo di un determinante è fallito.
+	 */
+	private synchronized void attendiDeterminanti() throws IllegalStateException {
+		while (this.determinanti_in_attesa > 0) {
+			try {
+				this.wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(EXCEPTION_ATTESA_INTERROTTA, e);
+			}
+		}
+		if (this.calcolo_fallito) {
+			throw new IllegalStateException(EXCEPTION_DETERMINANTE_NON_CALCOLATO);
+		}
+	}
+	
+	/**
+	 * Metodo che inserisce la matrice nella lista, verificando le regole di costruzione del Tensore.
+	 * Va invocato con il lock del Tensore.
+	 * 
+	 * @param nuova_matrice L'oggetto Matrice da aggiungere.
+	 * @param modifica TRUE se l'inserimento modifica i contenuti del Tensore, invalidandone l'impronta.
+	 */
+	private void inserisciMatrice(Matrice nuova_matrice, boolean modifica) throws IllegalArgumentException, IllegalStateException {
+		this.ripristinaMatrici();
+		if (modifica) {
+			this.invalidaImpronta();
+		}
 		if (this.matrici.isEmpty()) {
 			this.matrici.add(nuova_matrice);
 			this.dimensione = nuova_matrice.getDimensione();
@@ -63,33 +231,314 @@ public class Tensore extends NodoTensore {
 				this.matrici.add(nuova_matrice);
 			}
 		}
-		if (this.isRoot()) {
-			this.unita_tensore = Math.min(nuova_matrice.calcolaDeterminante(), this.unita_tensore);
-		} else {
-			this.unita_tensore = Math.max(nuova_matrice.calcolaDeterminante(), this.unita_tensore);
+		if (this.gestore != null) {
+			this.gestore.modificato(this);
+		}
+	}
+	
+	/**
+	 * Imposta la sorgente da cui le matrici del Tensore verranno lette alla prima richiesta.
+	 * Fino a quel momento il Tensore non contiene matrici e il calcolo della sua Unità è rimandato.
+	 * 
+	 * @param _caricatore Sorgente delle matrici.
+	 */
+	public synchronized void setCaricatore(CaricatoreMatrici _caricatore) {
+		this.caricatore = _caricatore;
+	}
+	
+	/**
+	 * Metodo che, se il Tensore è stato creato in modalità pigra, legge le matrici dalla loro sorgente
+	 * e le aggiunge al Tensore. La lettura avviene una sola volta: gli altri thread che la richiedono
+	 * nel frattempo ne attendono la fine.
+	 */
+	private void caricaMatrici() {
+		GestoreMemoria gestore_tensore;
+		synchronized (this) {
+			if (this.caricatore == null) {
+				return;
+			}
+			CaricatoreMatrici sorgente = this.caricatore;
+			this.caricatore = null;
+			for (Matrice m : sorgente.caricaMatrici()) {
+				this.aggiungiMatrice(m, false);
+			}
+			gestore_tensore = this.gestore;
+		}
+		if (gestore_tensore != null) {
+			gestore_tensore.registra(this);
+		}
+	}
+	
+	/**
+	 * Metodo che rende le matrici del Tensore disponibili in memoria, leggendole dalla sorgente pigra
+	 * oppure dal file su cui sono state spostate dal GestoreMemoria.
+	 * 
+	 * @return Matrici del Tensore. La lista resta valida anche se le matrici vengono in seguito spostate su disco.
+	 */
+	private List<Matrice> rendiResidenti() {
+		this.caricaMatrici();
+		List<Matrice> residenti;
+		synchronized (this) {
+			this.ripristinaMatrici();
+			residenti = this.matrici;
+		}
+		this.rispettaBudget();
+		return residenti;
+	}
+	
+	/**
+	 * Metodo che, se le matrici sono state spostate su disco, le rilegge e ne aggiorna l'occupazione presso
+	 * il GestoreMemoria. Altrimenti segnala soltanto l'accesso.
+	 * Va invocato con il lock del Tensore, seguito da {@link #rispettaBudget()} dopo averlo rilasciato.
+	 */
+	private void ripristinaMatrici() {
+		if (this.matrici_scaricate != null) {
+			CaricatoreMatrici sorgente = this.matrici_scaricate;
+			this.matrici_scaricate = null;
+			this.matrici = new ArrayList<Matrice>(sorgente.caricaMatrici());
+			this.gestore.aggiornaOccupazione(this);
+		} else if (this.gestore != null) {
+			this.gestore.accedi(this);
+		}
+	}
+	
+	/**
+	 * Metodo che, se il Tensore è gestito da un GestoreMemoria, sposta su disco altri Tensori finché
+	 * l'occupazione non rientra nel budget. Va invocato senza possedere il lock di alcun Tensore.
+	 */
+	private void rispettaBudget() {
+		GestoreMemoria gestore_tensore;
+		synchronized (this) {
+			gestore_tensore = this.gestore;
+		}
+		if (gestore_tensore != null) {
+			gestore_tensore.rispettaBudget(this);
+		}
+	}
+	
+	/**
+	 * Metodo utilizzato dal GestoreMemoria per liberare la memoria occupata dalle matrici.
+	 * Il chiamante possiede il lock del Tensore.
+	 * 
+	 * @param sorgente Sorgente da cui rileggere le matrici.
+	 */
+	void scaricaMatrici(CaricatoreMatrici sorgente) {
+		this.matrici = null;
+		this.matrici_scaricate = sorgente;
+	}
+	
+	/**
+	 * Imposta il GestoreMemoria che tiene traccia delle matrici del Tensore.
+	 */
+	synchronized void setGestore(GestoreMemoria _gestore) {
+		this.gestore = _gestore;
+	}
+	
+	/**
+	 * Restituisce le matrici attualmente in memoria, senza leggerle né segnalare l'accesso al GestoreMemoria.
+	 * Il chiamante possiede il lock del Tensore.
+	 */
+	List<Matrice> getMatriciResidenti() {
+		return this.matrici;
+	}
+	
+	/**
+	 * Indica se le matrici del Tensore sono in memoria (cioè né da leggere, né spostate su disco).
+	 */
+	synchronized boolean isResidente() {
+		return this.caricatore == null && this.matrici_scaricate == null;
+	}
+	
+	/**
+	 * Aggiunge all'impronta le impronte delle matrici del Tensore. Se il Tensore non è ancora caricato, o se le
+	 * sue matrici sono su disco, le impronte sono fornite dalla rispettiva sorgente senza leggere le matrici.
+	 */
+	@Override
+	void aggiungiContenutiImpronta(Impronta calcolo) {
+		List<byte []> impronte;
+		synchronized (this) {
+			if (this.caricatore != null) {
+				impronte = this.caricatore.getImpronte();
+			} else if (this.matrici_scaricate != null) {
+				impronte = this.matrici_scaricate.getImpronte();
+			} else {
+				impronte = new ArrayList<byte []>(this.matrici.size());
+				for (Matrice m : this.matrici) {
+					impronte.add(m.getImpronta());
+				}
+			}
+		}
+		for (byte [] impronta : impronte) {
+			calcolo.aggiungiImpronta(impronta);
+		}
+	}
+	
+	/**
+	 * Il Tensore è caricato solo se le sue matrici sono già state lette e tutti i loro determinanti calcolati.
+	 */
+	@Override
+	public synchronized boolean isCaricato() {
+		return this.caricatore == null && this.determinanti_in_attesa == 0 && !this.calcolo_fallito && super.isCaricato();
+	}
+	
+	/**
+	 * Restituisce l'Unità di Tensore, leggendo prima le matrici e attendendo i determinanti se necessario.
+	 */
+	@Override
+	public double getUnitaTensore() {
+		this.caricaMatrici();
+		this.attendiDeterminanti();
+		synchronized (this) {
+			return super.getUnitaTensore();
 		}
 	}
 	
 	/**
 	 * Calcola l'indice del tensore sommando tutti i determinanti delle matrici che lo compongono.
+	 * I determinanti sono quelli calcolati all'aggiunta delle matrici.
 	 * 
 	 * @return Indice del tensore come double.
 	 */
 	public double calcolaIndice() {
+		this.caricaMatrici();
+		this.attendiDeterminanti();
 		double somma_indice = 0;
-		for (Matrice m : this.matrici) {
-			somma_indice += m.calcolaDeterminante();
+		synchronized (this) {
+			for (double det : this.determinanti) {
+				somma_indice += det;
+			}
 		}
 		return somma_indice;
 	}
 	
+	/**
+	 * Calcola l'indice del tensore in forma logaritmica.
+	 * I determinanti in forma logaritmica, ottenuti all'aggiunta delle matrici, sono sommati senza mai uscire
+	 * dallo spazio dei logaritmi, per cui il risultato è affidabile anche quando i singoli determinanti (o la
+	 * loro somma) non sarebbero rappresentabili come double. Le matrici non vengono rilette.
+	 * 
+	 * @return Indice del tensore come valore logaritmico.
+	 */
+	public ValoreLogaritmico calcolaIndiceLogaritmico() {
+		this.caricaMatrici();
+		this.attendiDeterminanti();
+		synchronized (this) {
+			return ValoreLogaritmico.somma(this.log_determinanti);
+		}
+	}
+	
+	/**
+	 * Indica se un indice (o un determinante) calcolato come double è affidabile, cioè non è andato in overflow.
+	 */
+	static boolean isRappresentabile(double valore) {
+		return !Double.isInfinite(valore) && !Double.isNaN(valore);
+	}
+	
+	/**
+	 * Restituisce la descrizione dell'indice del Tensore. Se l'indice calcolato come double non è
+	 * rappresentabile, viene sostituito dall'indice in forma logaritmica.
+	 * 
+	 * @param indice Indice del Tensore come double.
+	 * @return Riga dell'indice.
+	 */
+	private String descriviIndice(double indice) {
+		if (isRappresentabile(indice)) {
+			return String.format(STRING_INDICE, indice);
+		}
+		return String.format(STRING_INDICE_LOGARITMICO, this.calcolaIndiceLogaritmico());
+	}
+	
+	/**
+	 * Restituisce la descrizione di un indice, come {@link #descriviIndice(double)}, a partire dall'indice
+	 * in forma logaritmica già calcolato.
+	 * 
+	 * @param indice Indice del Tensore come double.
+	 * @param indice_logaritmico Lo stesso indice in forma logaritmica.
+	 * @return Riga dell'indice.
+	 */
+	static String descriviIndice(double indice, ValoreLogaritmico indice_logaritmico) {
+		if (isRappresentabile(indice)) {
+			return String.format(STRING_INDICE, indice);
+		}
+		return String.format(STRING_INDICE_LOGARITMICO, indice_logaritmico);
+	}
+	
+	/**
+	 * Calcola il prodotto di tutte le matrici del Tensore, nell'ordine in cui sono state aggiunte.
+	 * 
+	 * @return Matrice prodotto.
+	 * @throws IllegalStateException Se il Tensore non contiene matrici.
+	 */
+	public Matrice calcolaProdotto() throws IllegalStateException {
+		List<Matrice> residenti = this.rendiResidenti();
+		if (residenti.isEmpty()) {
+			throw new IllegalStateException(EXCEPTION_TENSORE_VUOTO);
+		}
+		return Matrice.moltiplicaCatena(residenti);
+	}
+	
+	/**
+	 * Restituisce le sole matrici del Tensore, esclusi i figli, leggendole se necessario.
+	 */
+	List<Matrice> getMatriciProprie() {
+		return this.rendiResidenti();
+	}
+	
+	/**
+	 * Restituisce le sole matrici del Tensore senza calcolarne i determinanti: se il Tensore non è ancora
+	 * caricato, le matrici vengono lette dalla sorgente ma non aggiunte al Tensore.
+	 */
+	List<Matrice> getMatriciSenzaCalcolo() {
+		CaricatoreMatrici sorgente;
+		synchronized (this) {
+			sorgente = this.caricatore;
+		}
+		if (sorgente != null) {
+			return sorgente.caricaMatrici();
+		}
+		return this.rendiResidenti();
+	}
+	
+	/**
+	 * Restituisce una stima del costo di valutazione delle sole matrici del Tensore, come somma dei cubi
+	 * delle loro dimensioni. Se il Tensore non è ancora caricato, le matrici non vengono lette.
+	 */
+	synchronized long stimaCosto() {
+		if (this.caricatore != null) {
+			long costo = 0;
+			for (int dim : this.caricatore.getDimensioni()) {
+				costo += (long) dim * dim * dim;
+			}
+			return costo;
+		}
+		return (long) this.determinanti.size() * this.dimensione * this.dimensione * this.dimensione;
+	}
+	
+	/**
+	 * Restituisce i determinanti delle matrici del Tensore, nello stesso ordine delle matrici.
+	 */
+	List<Double> getDeterminanti() {
+		this.caricaMatrici();
+		this.attendiDeterminanti();
+		return this.determinanti;
+	}
+	
+	/**
+	 * Restituisce i determinanti delle matrici del Tensore in forma logaritmica, nello stesso ordine delle matrici.
+	 */
+	List<ValoreLogaritmico> getLogDeterminanti() {
+		this.caricaMatrici();
+		this.attendiDeterminanti();
+		return this.log_determinanti;
+	}
+	
 	/**
 	 * Restituisce l'indice del tensore.
 	 */
 	@Override
 	public List<String> getListaIndici() {
 		List<String> lista = new ArrayList<String>();
-		lista.add(String.format(STRING_INDICE, this.calcolaIndice()));
+		lista.add(this.descriviIndice(this.calcolaIndice()));
 		return lista;
 	}
 	
@@ -98,8 +547,9 @@ public class Tensore extends NodoTensore {
 	 */
 	@Override
 	public List<Matrice> getMatrici() {
+		List<Matrice> residenti = this.rendiResidenti();
 		List<Matrice> lista = super.getMatrici();
-		lista.addAll(this.matrici);
+		lista.addAll(residenti);
 		return lista;
 	}
 	
@@ -110,10 +560,11 @@ public class Tensore extends NodoTensore {
 	 * @return Rappresentazione grafica del tensore.
 	 */
 	public String toString() {
+		List<Matrice> residenti = this.rendiResidenti();
 		StringBuffer s = new StringBuffer();
 		s.append(super.toString());
 		s.append(INTRO_MATRICI);
-		for (Matrice m : this.matrici) {
+		for (Matrice m : residenti) {
 			s.append(m.toString() + "\n\n");
 		}
 		return s.toString();
@@ -0,0 +1,146 @@
+package tensor.utility;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Classe che calcola l'impronta (hash SHA-256) di una struttura, a partire dagli elementi che la compongono.
+ * Le impronte sono utilizzate per riconoscere sottoalberi identici fra versioni diverse dello stesso file:
+ * l'impronta di un nodo è calcolata a partire dalle impronte dei figli, come in un albero di Merkle.
+ *
+ * Gli elementi sono aggiunti in sequenza; ognuno è preceduto da un marcatore di tipo, in modo che
+ * sequenze diverse non possano produrre gli stessi byte.
+ *
+ * @author Michele Dusi <michele.dusi.it@ieee.org>
+ *
+ */
+public final class Impronta {
+
+	/** Lunghezza in byte di un'impronta restituita da {@link #calcola()}. */
+	public static final int LUNGHEZZA = 32;
+
+	private static final String ALGORITMO = "SHA-256";
+	private static final String EXCEPTION_ALGORITMO_NON_DISPONIBILE = "Algoritmo di hash \"%s\" non disponibile.";
+	private static final String FORMATO_BYTE = "%02x";
+
+	// Marcatori di tipo
+	private static final byte MARCATORE_TESTO = 1;
+	private static final byte MARCATORE_TESTO_NULLO = 2;
+	private static final byte MARCATORE_ELEMENTO = 3;
+	private static final byte MARCATORE_DIMENSIONE = 4;
+	private static final byte MARCATORE_IMPRONTA = 5;
+	private static final byte MARCATORE_FLAG = 6;
+
+	private final MessageDigest digest;
+	private final ByteBuffer buffer_valore = ByteBuffer.allocate(Long.BYTES);
+
+	/**
+	 * Costruttore che prepara il calcolo di una nuova impronta.
+	 */
+	public Impronta() {
+		try {
+			this.digest = MessageDigest.getInstance(ALGORITMO);
+		} catch (NoSuchAlgorithmException e) {
+			// SHA-256 è garantito da ogni implementazione della piattaforma Java
+			throw new IllegalStateException(String.format(EXCEPTION_ALGORITMO_NON_DISPONIBILE, ALGORITMO), e);
+		}
+	}
+
+	/**
+	 * Aggiunge un testo (eventualmente nullo) all'impronta.
+	 */
+	public Impronta aggiungiTesto(String testo) {
+		if (testo == null) {
+			this.digest.update(MARCATORE_TESTO_NULLO);
+		} else {
+			byte [] contenuto = testo.getBytes(StandardCharsets.UTF_8);
+			this.digest.update(MARCATORE_TESTO);
+			this.aggiungiLunghezza(contenuto.length);
+			this.digest.update(contenuto);
+		}
+		return this;
+	}
+
+	/**
+	 * Aggiunge un flag booleano all'impronta.
+	 */
+	public Impronta aggiungiFlag(boolean flag) {
+		this.digest.update(MARCATORE_FLAG);
+		this.digest.update((byte) (flag ? 1 : 0));
+		return this;
+	}
+
+	/**
+	 * Aggiunge un elemento non nullo di una matrice all'impronta, insieme alla sua posizione in ordine di riga.
+	 * Gli elementi nulli vanno omessi, per cui l'impronta non dipende dalla rappresentazione (densa o sparsa).
+	 */
+	public Impronta aggiungiElemento(int posizione, double valore) {
+		this.digest.update(MARCATORE_ELEMENTO);
+		this.buffer_valore.clear();
+		this.buffer_valore.putInt(posizione);
+		this.digest.update(this.buffer_valore.array(), 0, Integer.BYTES);
+		this.buffer_valore.clear();
+		this.buffer_valore.putLong(Double.doubleToLongBits(valore));
+		this.digest.update(this.buffer_valore.array());
+		return this;
+	}
+
+	/**
+	 * Aggiunge la dimensione di una matrice all'impronta, dopo i suoi elementi.
+	 */
+	public Impronta aggiungiDimensione(int dimensione) {
+		this.digest.update(MARCATORE_DIMENSIONE);
+		this.buffer_valore.clear();
+		this.buffer_valore.putInt(dimensione);
+		this.digest.update(this.buffer_valore.array(), 0, Integer.BYTES);
+		return this;
+	}
+
+	/**
+	 * Aggiunge l'impronta di un sottoalbero figlio, in forma esadecimale.
+	 */
+	public Impronta aggiungiImpronta(String impronta) {
+		this.digest.update(MARCATORE_IMPRONTA);
+		return this.aggiungiTesto(impronta);
+	}
+
+	/**
+	 * Aggiunge l'impronta di un elemento figlio (ad esempio di una matrice) restituita da {@link #calcola()}.
+	 */
+	public Impronta aggiungiImpronta(byte [] impronta) {
+		this.digest.update(MARCATORE_IMPRONTA);
+		this.digest.update(impronta);
+		return this;
+	}
+
+	/**
+	 * Conclude il calcolo e restituisce l'impronta (32 byte).
+	 * Dopo questa chiamata l'oggetto non deve più essere utilizzato.
+	 */
+	public byte [] calcola() {
+		return this.digest.digest();
+	}
+
+	/**
+	 * Restituisce un'impronta in forma esadecimale.
+	 */
+	public static String inEsadecimale(byte [] impronta) {
+		StringBuilder s = new StringBuilder(2 * impronta.length);
+		for (byte b : impronta) {
+			s.append(String.format(FORMATO_BYTE, b));
+		}
+		return s.toString();
+	}
+
+	/**
+	 * Aggiunge una lunghezza, per separare in modo univoco testi consecutivi.
+	 */
+	private void aggiungiLunghezza(int lunghezza) {
+		this.buffer_valore.clear();
+		this.buffer_valore.putLong(lunghezza);
+		this.digest.update(this.buffer_valore.array());
+	}
+
+}
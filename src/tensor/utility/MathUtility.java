@@ -1,5 +1,7 @@
 package tensor.utility;
 
+import java.util.List;
+
 /**
  * Classe di utilità,
  * 
@@ -37,6 +39,118 @@ public final class MathUtility {
 		}
 	}
 
+	/**
+	 * Enum che descrive la struttura di una matrice, ossia la disposizione dei suoi elementi non nulli.
+	 * Sulla base della struttura è possibile scegliere un algoritmo per il determinante più efficiente
+	 * di quello generico.
+	 */
+	public static enum StrutturaMatrice {
+		DIAGONALE, TRIANGOLARE_SUPERIORE, TRIANGOLARE_INFERIORE, A_BANDA, SIMMETRICA, GENERICA;
+		
+		/**
+		 * Indica se il determinante di una matrice con questa struttura è il prodotto degli elementi diagonali.
+		 */
+		public boolean isTriangolare() {
+			return this == DIAGONALE || this == TRIANGOLARE_SUPERIORE || this == TRIANGOLARE_INFERIORE;
+		}
+	}
+	
+	/**
+	 * Classe che rappresenta un numero reale attraverso il suo segno e il logaritmo naturale del suo
+	 * valore assoluto. Permette di manipolare valori (come i determinanti di matrici di grandi dimensioni)
+	 * che eccederebbero il range di rappresentazione di un double.
+	 */
+	public static final class ValoreLogaritmico {
+		
+		private static final String STRING_FORMAT = "%se^%.6f";
+		private static final String SEGNO_NEGATIVO = "-";
+		private static final String SEGNO_POSITIVO = "";
+		
+		/** Valore nullo: segno zero e logaritmo -infinito. */
+		public static final ValoreLogaritmico ZERO = new ValoreLogaritmico(0, Double.NEGATIVE_INFINITY);
+		
+		private final int segno;
+		private final double logaritmo;
+		
+		/**
+		 * Costruttore che istanzia un valore a partire dal segno e dal logaritmo del valore assoluto.
+		 * 
+		 * @param _segno Segno del valore: -1, 0 oppure +1.
+		 * @param _logaritmo Logaritmo naturale del valore assoluto.
+		 */
+		public ValoreLogaritmico(int _segno, double _logaritmo) {
+			this.segno = Integer.signum(_segno);
+			this.logaritmo = (this.segno == 0) ? Double.NEGATIVE_INFINITY : _logaritmo;
+		}
+		
+		/**
+		 * Converte un double nella sua rappresentazione logaritmica.
+		 */
+		public static ValoreLogaritmico daDouble(double valore) {
+			if (valore == 0) {
+				return ZERO;
+			}
+			return new ValoreLogaritmico(valore > 0 ? 1 : -1, Math.log(Math.abs(valore)));
+		}
+		
+		public int getSegno() {
+			return this.segno;
+		}
+		
+		public double getLogaritmo() {
+			return this.logaritmo;
+		}
+		
+		/**
+		 * Restituisce il valore come double. Se il valore eccede il range di rappresentazione
+		 * il risultato è un infinito con il segno corretto.
+		 */
+		public double getValore() {
+			return this.segno * Math.exp(this.logaritmo);
+		}
+		
+		/**
+		 * Somma una lista di valori logaritmici senza uscire dallo spazio dei logaritmi.
+		 * Ogni termine viene scalato rispetto al termine di modulo massimo, in modo che nessun
+		 * esponenziale intermedio possa andare in overflow.
+		 * 
+		 * @param valori Valori da sommare.
+		 * @return Somma dei valori.
+		 */
+		public static ValoreLogaritmico somma(List<ValoreLogaritmico> valori) {
+			double log_max = Double.NEGATIVE_INFINITY;
+			for (ValoreLogaritmico v : valori) {
+				if (v.segno != 0) {
+					log_max = Math.max(log_max, v.logaritmo);
+				}
+			}
+			if (log_max == Double.NEGATIVE_INFINITY) {
+				return ZERO;
+			}
+			double somma_scalata = 0;
+			for (ValoreLogaritmico v : valori) {
+				if (v.segno != 0) {
+					somma_scalata += v.segno * Math.exp(v.logaritmo - log_max);
+				}
+			}
+			if (somma_scalata == 0) {
+				return ZERO;
+			}
+			return new ValoreLogaritmico(somma_scalata > 0 ? 1 : -1, log_max + Math.log(Math.abs(somma_scalata)));
+		}
+		
+		/**
+		 * Restituisce il valore come stringa, nella forma "[segno]e^[logaritmo]".
+		 */
+		@Override
+		public String toString() {
+			if (this.segno == 0) {
+				return Integer.toString(0);
+			}
+			return String.format(STRING_FORMAT, this.segno < 0 ? SEGNO_NEGATIVO : SEGNO_POSITIVO, this.logaritmo);
+		}
+	}
+
 	private MathUtility() {};
 	
 	/**
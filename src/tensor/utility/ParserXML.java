@@ -1,19 +1,39 @@
 package tensor.utility;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 
+import tensor.profilazione.EventoLetturaFile;
+import tensor.tree.ArchivioValutazioni;
+import tensor.tree.CaricatoreMatrici;
+import tensor.tree.GestoreMemoria;
 import tensor.tree.NodoTensore;
 import tensor.tree.Matrice;
+import tensor.tree.MatriceIntera;
+import tensor.tree.MatriceSparsa;
 import tensor.tree.Tensore;
 
 /**
@@ -27,6 +47,12 @@ public final class ParserXML {
 	
 	private static final int IN_BUFF_SIZE = 4096;
 	
+	// Parametri per la scelta della rappresentazione sparsa
+	private static final int DIM_MIN_SPARSA = 16; // Sotto questa dimensione la rappresentazione densa è sempre conveniente.
+	private static final double SOGLIA_DENSITA_SPARSA = 0.25; // Frazione massima di elementi non nulli per una matrice sparsa.
+	
+	private static final int CAPACITA_INIZIALE_MATRICE = 16; // Elementi riservati prima di conoscere la dimensione.
+	
 	// Tag
 	private static final String TAG_NODE = "tensornode";
 	private static final String TAG_TENSOR = "tensor";
@@ -39,24 +65,75 @@ public final class ParserXML {
 	// Logs
 	private static final String LOG_START_READING = "Inizio a leggere il documento...";
 	private static final String LOG_END_READING = "Lettura terminata.";
+	
+	// Errori
+	private static final String EXCEPTION_LETTURA_MATRICE = "Errore nella lettura della matrice all'offset %d.";
+	private static final String EXCEPTION_RIGA_IRREGOLARE = "La riga %d della matrice contiene %d elementi invece di %d.";
+	private static final String EXCEPTION_PIPELINE_INTERROTTA = "Lettura in pipeline interrotta.";
+	private static final String EXCEPTION_CALCOLO_DETERMINANTE = "Errore nel calcolo di un determinante.";
+	
+	// Parametri predefiniti della lettura in pipeline
+	private static final int CAPACITA_CODA_DEFAULT = 64;
+	
+	// Caratteri notevoli per la scansione a byte
+	private static final byte CHAR_APERTURA_TAG = '<';
+	private static final byte CHAR_CHIUSURA_TAG = '>';
+	private static final byte CHAR_SLASH = '/';
+	private static final byte CHAR_PUNTO_DOMANDA = '?';
+	private static final byte CHAR_PUNTO_ESCLAMATIVO = '!';
+	private static final byte [] INIZIO_COMMENTO = "<!--".getBytes(StandardCharsets.US_ASCII);
+	private static final byte [] FINE_COMMENTO = "-->".getBytes(StandardCharsets.US_ASCII);
+	private static final byte [] FINE_ISTRUZIONE = "?>".getBytes(StandardCharsets.US_ASCII);
+	private static final byte [] INIZIO_CDATA = "<![CDATA[".getBytes(StandardCharsets.US_ASCII);
+	private static final byte [] FINE_CDATA = "]]>".getBytes(StandardCharsets.US_ASCII);
+	private static final char CHAR_E_COMMERCIALE = '&';
+	private static final char CHAR_PUNTO_E_VIRGOLA = ';';
+	private static final String PREFISSO_CARATTERE_NUMERICO = "#";
+	private static final String PREFISSO_CARATTERE_ESADECIMALE = "#x";
+	private static final String [][] ENTITA_PREDEFINITE = {
+			{"amp", "&"}, {"lt", "<"}, {"gt", ">"}, {"quot", "\""}, {"apos", "'"}};
 			
-	private static XMLStreamReader reader;
+	/*
+	 * Factory condivisa da tutte le letture: la ricerca dell'implementazione StAX (XMLInputFactory.newFactory())
+	 * è costosa e viene quindi eseguita una sola volta. La creazione dei reader non è garantita thread-safe,
+	 * per cui avviene sempre sincronizzata sulla classe (come leggiMatrice).
+	 */
+	private static final XMLInputFactory FACTORY = XMLInputFactory.newFactory();
 	
 	private ParserXML() {};
 
+	/**
+	 * Metodo che legge il file e costruisce l'albero, calcolando i determinanti di tutte le matrici.
+	 * 
+	 * @param nome_file Il nome del File da leggere.
+	 * @return Radice dell'albero.
+	 * @throws FileNotFoundException
+	 * @throws XMLStreamException
+	 */
+	public static NodoTensore leggiFile(String nome_file) throws FileNotFoundException, XMLStreamException {
+		return leggi(nome_file, new Lettura(null, null, null));
+	}
+
 	/**
 	 * Metodo effettivo che si occupa del parsing.
 	 * Vedere la descrizione della classe per ulteriori informazioni.
 	 * 
 	 * @param nome_file Il nome del File da leggere.
-	 * @return
+	 * @param lettura Stato della lettura, con le modalità richieste dal chiamante.
+	 * @return Radice dell'albero.
 	 * @throws FileNotFoundException
 	 * @throws XMLStreamException
 	 */
-	public static NodoTensore leggiFile(String nome_file) throws FileNotFoundException, XMLStreamException {
+	private static NodoTensore leggi(String nome_file, Lettura lettura) throws FileNotFoundException, XMLStreamException {
 		// Preparazione degli oggetti necessari
-		XMLInputFactory factory = XMLInputFactory.newFactory();
-		reader = factory.createXMLStreamReader(new BufferedReader(new FileReader(new File(nome_file)), IN_BUFF_SIZE));
+		EventoLetturaFile evento = new EventoLetturaFile(nome_file,
+				(lettura.coda_lavori == null) ? EventoLetturaFile.MODALITA_COMPLETA : EventoLetturaFile.MODALITA_PIPELINE);
+		evento.begin();
+		XMLStreamReader reader;
+		synchronized (ParserXML.class) {
+			reader = FACTORY.createXMLStreamReader(new BufferedReader(new FileReader(new File(nome_file)), IN_BUFF_SIZE));
+		}
+		lettura.reader = reader;
 		NodoTensore root = null;
 		boolean is_building = false;
 		
@@ -73,7 +150,7 @@ public final class ParserXML {
 					break;
 				case TAG_NODE:
 					if (is_building) { // Controllo che si sia dichiarato il tag iniziale
-						root = costruisciNodoTensore(true);
+						root = costruisciNodoTensore(lettura, true);
 					}
 					break;
 				default:
@@ -86,16 +163,52 @@ public final class ParserXML {
 				break;
 			}
 		}
+		evento.commit();
 		return root;
 	}
 	
+	/**
+	 * Metodo che legge il file come {@link #leggiFile(String)}, registrando ogni Tensore presso il
+	 * GestoreMemoria appena costruito: se il budget viene superato durante la lettura, le matrici dei
+	 * Tensori letti da più tempo vengono spostate su disco, per cui l'occupazione di memoria resta limitata
+	 * anche per file più grandi dello heap.
+	 * 
+	 * @param nome_file Il nome del File da leggere.
+	 * @param gestore Gestore della memoria occupata dalle matrici.
+	 * @return Radice dell'albero.
+	 * @throws FileNotFoundException
+	 * @throws XMLStreamException
+	 */
+	public static NodoTensore leggiFile(String nome_file, GestoreMemoria gestore) throws FileNotFoundException, XMLStreamException {
+		return leggi(nome_file, new Lettura(gestore, null, null));
+	}
+	
+	/**
+	 * Metodo che legge il file come {@link #leggiFile(String)}, calcolando l'impronta di ogni Tensore appena
+	 * costruito: se l'archivio contiene già il risultato di un sottoalbero identico, i determinanti delle sue
+	 * matrici non vengono calcolati (le matrici restano disponibili e vengono elaborate solo se richieste).
+	 * L'albero va quindi valutato attraverso lo stesso archivio, ad esempio con
+	 * {@link ArchivioValutazioni#getListaUnita(NodoTensore)}.
+	 * 
+	 * @param nome_file Il nome del File da leggere.
+	 * @param archivio Archivio dei risultati di una valutazione precedente.
+	 * @return Radice dell'albero.
+	 * @throws FileNotFoundException
+	 * @throws XMLStreamException
+	 */
+	public static NodoTensore leggiFile(String nome_file, ArchivioValutazioni archivio) throws FileNotFoundException, XMLStreamException {
+		return leggi(nome_file, new Lettura(null, archivio, null));
+	}
+	
 	/**
 	 * Metodo che costruisce un oggetto NodoTensore dal file XML.
+	 * @param lettura Stato della lettura in corso.
 	 * @param is_root
 	 * @return
 	 * @throws XMLStreamException
 	 */
-	private static NodoTensore costruisciNodoTensore(boolean is_root) throws XMLStreamException {
+	private static NodoTensore costruisciNodoTensore(Lettura lettura, boolean is_root) throws XMLStreamException {
+		XMLStreamReader reader = lettura.reader;
 		boolean is_building = true;
 		NodoTensore nodo = new NodoTensore(is_root);
 		do {
@@ -103,20 +216,22 @@ public final class ParserXML {
 			case XMLStreamConstants.START_ELEMENT:
 				switch (reader.getLocalName().toLowerCase()) {
 				case TAG_LABEL:
-					if (reader.next() == XMLStreamConstants.CHARACTERS) {
-						nodo.setLabel(reader.getText());
+					// Come nella scansione a byte: testo completo (entità comprese) privo di spazi, ignorato se vuoto
+					String label = reader.getElementText().trim();
+					if (!label.isEmpty()) {
+						nodo.setLabel(label);
 					}
 					break;
 				case TAG_NODE:
-					nodo.aggiungiFiglio(costruisciNodoTensore(false));
+					nodo.aggiungiFiglio(costruisciNodoTensore(lettura, false));
 					break;
 				case TAG_TENSOR:
-					nodo.aggiungiFiglio(costruisciTensore());
+					nodo.aggiungiFiglio(costruisciTensore(lettura));
 					break;
 				}
 				break;
 			case XMLStreamConstants.END_ELEMENT:
-				if (reader.getLocalName().equals(TAG_NODE)) {
+				if (reader.getLocalName().toLowerCase().equals(TAG_NODE)) {
 					is_building = false;
 				}
 			}
@@ -127,13 +242,16 @@ public final class ParserXML {
 	/**
 	 * Metodo che costruisce un oggetto Tensore leggendolo da File.
 	 * 
+	 * @param lettura Stato della lettura in corso.
 	 * @return Tensore.
 	 * @throws IllegalArgumentException
 	 * @throws XMLStreamException
 	 */
-	private static Tensore costruisciTensore() throws IllegalArgumentException, XMLStreamException {
+	private static Tensore costruisciTensore(Lettura lettura) throws IllegalArgumentException, XMLStreamException {
+		XMLStreamReader reader = lettura.reader;
 		boolean is_building = true;
 		Tensore tensore = new Tensore();
+		List<Matrice> matrici_rinviate = new ArrayList<Matrice>(); // Utilizzata solo con l'archivio.
 		do {
 			switch(reader.next()) {
 			case XMLStreamConstants.START_ELEMENT:
@@ -146,60 +264,840 @@ public final class ParserXML {
 				 * Tensore abbia dei nodi figli.
 				 */
 				case TAG_NODE:
-					tensore.aggiungiFiglio(costruisciNodoTensore(false));
+					tensore.aggiungiFiglio(costruisciNodoTensore(lettura, false));
 					break;
 				case TAG_TENSOR:
-					tensore.aggiungiFiglio(costruisciTensore());
+					tensore.aggiungiFiglio(costruisciTensore(lettura));
 					break;
 				case TAG_MATRIX:
-					tensore.aggiungiMatrice(costruisciMatrice());;
+					Matrice matrice = costruisciMatrice(reader);
+					if (lettura.archivio_valutazioni != null) {
+						matrici_rinviate.add(matrice);
+					} else if (lettura.coda_lavori == null) {
+						tensore.aggiungiMatrice(matrice);
+					} else {
+						accodaMatrice(lettura, tensore, matrice);
+					}
 					break;
 				}
 				break;
 			case XMLStreamConstants.END_ELEMENT:
-				if (reader.getLocalName().equals(TAG_TENSOR)) {
+				if (reader.getLocalName().toLowerCase().equals(TAG_TENSOR)) {
 					is_building = false;
 				}
 			}
 		} while (is_building && reader.hasNext());
+		if (!matrici_rinviate.isEmpty()) {
+			// L'impronta si calcola con le matrici in attesa: se il sottoalbero è già stato valutato, restano in attesa.
+			tensore.setCaricatore(creaCaricatore(matrici_rinviate));
+			if (!lettura.archivio_valutazioni.contiene(tensore.getImpronta())) {
+				tensore.setCaricatore(null);
+				for (Matrice m : matrici_rinviate) {
+					tensore.aggiungiMatrice(m);
+				}
+			}
+		}
+		if (lettura.gestore_memoria != null) {
+			lettura.gestore_memoria.registra(tensore);
+		}
 		return tensore;
 	}
 	
 	/**
 	 * Metodo per la lettura e creazione di una matrice.
-	 * E' logicamente identico ai due metodi precedenti.
+	 * E' logicamente identico ai due metodi precedenti, ma legge dal reader fornito: in questo modo può essere
+	 * utilizzato anche dal caricamento pigro, che legge ogni matrice con un proprio reader.
+	 * Gli elementi sono raccolti in un array di int in ordine di riga, senza costruire oggetti per ciascuno:
+	 * letta la prima riga, lo spazio per l'intera matrice quadrata viene riservato in una sola volta.
+	 * Tutte le righe devono avere la lunghezza della prima.
 	 * 
+	 * @param reader_matrice Reader posizionato sul tag di apertura della matrice.
 	 * @return Matrice letta da file XML
 	 * @throws NumberFormatException
+	 * @throws IllegalArgumentException Se le righe non hanno tutte la stessa lunghezza, o la matrice non è quadrata.
 	 * @throws XMLStreamException
 	 */
-	private static Matrice costruisciMatrice() throws NumberFormatException, XMLStreamException {
+	private static Matrice costruisciMatrice(XMLStreamReader reader_matrice) throws NumberFormatException, IllegalArgumentException, XMLStreamException {
 		boolean is_building = true;
-		List<List<Double>> temp_matrice = new ArrayList<>();
-		List<Double> current_row = null;
+		int [] elementi = new int [CAPACITA_INIZIALE_MATRICE];
+		int numero_elementi = 0, numero_righe = 0;
+		int inizio_riga = 0, lunghezza_prima_riga = -1;
+		int non_nulli = 0;
+		int minimo = Integer.MAX_VALUE, massimo = Integer.MIN_VALUE;
 		do {
-			switch(reader.next()) {
+			switch(reader_matrice.next()) {
 			case XMLStreamConstants.START_ELEMENT:
-				switch (reader.getLocalName().toLowerCase()) {
+				switch (reader_matrice.getLocalName().toLowerCase()) {
 				case TAG_ROW:
-					current_row = new ArrayList<Double>();
-					temp_matrice.add(current_row);
+					numero_righe++;
+					if (numero_righe == 2 && elementi.length < numero_elementi * numero_elementi) {
+						elementi = Arrays.copyOf(elementi, numero_elementi * numero_elementi);
+					}
+					inizio_riga = numero_elementi;
 					break;
 				case TAG_COLUMN:
-					if (reader.next() == XMLStreamConstants.CHARACTERS) {
-						int read_value = Integer.parseInt(reader.getText().trim());
-//						System.out.println(read_value);
-						current_row.add(Double.parseDouble(read_value + ""));
+					String testo = reader_matrice.getElementText().trim();
+					if (!testo.isEmpty()) {
+						int read_value = Integer.parseInt(testo);
+						if (numero_elementi == elementi.length) {
+							elementi = Arrays.copyOf(elementi, 2 * elementi.length);
+						}
+						elementi[numero_elementi++] = read_value;
+						if (read_value != 0) {
+							non_nulli++;
+						}
+						minimo = Math.min(minimo, read_value);
+						massimo = Math.max(massimo, read_value);
 					}
 					break;
 				}
 				break;
 			case XMLStreamConstants.END_ELEMENT:
-				if (reader.getLocalName().equals(TAG_MATRIX)) {
+				switch (reader_matrice.getLocalName().toLowerCase()) {
+				case TAG_ROW:
+					int lunghezza_riga = numero_elementi - inizio_riga;
+					if (lunghezza_prima_riga < 0) {
+						lunghezza_prima_riga = lunghezza_riga;
+					} else if (lunghezza_riga != lunghezza_prima_riga) {
+						throw new IllegalArgumentException(String.format(EXCEPTION_RIGA_IRREGOLARE, numero_righe, lunghezza_riga, lunghezza_prima_riga));
+					}
+					break;
+				case TAG_MATRIX:
 					is_building = false;
+					break;
 				}
 			}
-		} while (is_building && reader.hasNext());
-		return new Matrice(temp_matrice);
+		} while (is_building && reader_matrice.hasNext());
+		
+		if (numero_elementi != elementi.length) {
+			elementi = Arrays.copyOf(elementi, numero_elementi);
+		}
+		
+		// Scelgo la rappresentazione in base alla densità degli elementi non nulli
+		int dim = numero_righe;
+		if (dim >= DIM_MIN_SPARSA && non_nulli <= SOGLIA_DENSITA_SPARSA * dim * dim) {
+			return new MatriceSparsa(dim, elementi);
+		}
+		// Gli elementi sono interi: li memorizzo con il tipo più piccolo che contiene tutti i valori letti
+		return new MatriceIntera(dim, elementi, MatriceIntera.TipoElementi.perIntervallo(minimo, massimo));
+	}
+	
+	/**
+	 * Metodo che legge un file in modalità pigra.
+	 * Il file viene mappato in memoria e percorso una sola volta con una scansione a byte, molto più leggera
+	 * del parsing completo: vengono costruiti i nodi e i tensori con le rispettive etichette, ma di ogni
+	 * matrice è memorizzato soltanto l'intervallo di byte che occupa nel file. Le matrici di un Tensore sono
+	 * effettivamente lette (e i loro determinanti calcolati) solo la prima volta che vengono richieste,
+	 * per cui le interrogazioni che riguardano una piccola parte dell'albero costano in proporzione a quella parte.
+	 * 
+	 * Nota: la mappatura in memoria limita la dimensione del file a 2GB.
+	 * 
+	 * @param nome_file Il nome del File da leggere.
+	 * @return Radice dell'albero, con i Tensori non ancora caricati.
+	 * @throws IOException Se il file non esiste o non può essere mappato.
+	 */
+	public static NodoTensore leggiFileLazy(String nome_file) throws IOException {
+		EventoLetturaFile evento = new EventoLetturaFile(nome_file, EventoLetturaFile.MODALITA_PIGRA);
+		evento.begin();
+		RandomAccessFile file = new RandomAccessFile(new File(nome_file), "r");
+		Scansione scansione;
+		try {
+			scansione = new Scansione(file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length()));
+		} finally {
+			file.close(); // La mappatura resta valida anche dopo la chiusura del file.
+		}
+		NodoTensore root = null;
+		boolean is_building = false;
+		
+		System.out.println(LOG_START_READING);
+		while (scansione.prossimoTag()) {
+			if (!scansione.tag_di_chiusura) {
+				switch (scansione.tag_corrente) {
+				case TAG_TREE:
+					is_building = true;
+					break;
+				case TAG_NODE:
+					if (is_building) {
+						root = indicizzaNodoTensore(scansione, true);
+					}
+					break;
+				default:
+					// Error
+					throw new IllegalStateException(scansione.tag_corrente);
+				}
+			}
+		}
+		System.out.println(LOG_END_READING);
+		evento.commit();
+		return root;
+	}
+	
+	/**
+	 * Metodo che costruisce un NodoTensore durante la scansione a byte.
+	 * E' l'equivalente di costruisciNodoTensore per il caricamento pigro.
+	 * 
+	 * @param scansione Scansione posizionata dopo il tag di apertura del nodo.
+	 * @param is_root
+	 * @return Nodo con i figli indicizzati.
+	 */
+	private static NodoTensore indicizzaNodoTensore(Scansione scansione, boolean is_root) {
+		NodoTensore nodo = new NodoTensore(is_root);
+		if (scansione.tag_vuoto) {
+			return nodo; // Tag autochiuso: il nodo non ha contenuto.
+		}
+		while (scansione.prossimoTag()) {
+			if (scansione.tag_di_chiusura) {
+				if (scansione.tag_corrente.equals(TAG_NODE)) {
+					break;
+				}
+			} else {
+				switch (scansione.tag_corrente) {
+				case TAG_LABEL:
+					String label = scansione.leggiTesto();
+					if (!label.isEmpty()) {
+						nodo.setLabel(label);
+					}
+					break;
+				case TAG_NODE:
+					nodo.aggiungiFiglio(indicizzaNodoTensore(scansione, false));
+					break;
+				case TAG_TENSOR:
+					nodo.aggiungiFiglio(indicizzaTensore(scansione));
+					break;
+				}
+			}
+		}
+		return nodo;
+	}
+	
+	/**
+	 * Metodo che costruisce un Tensore durante la scansione a byte, registrando la posizione delle
+	 * sue matrici senza leggerle. Come costruisciTensore, prevede anche la presenza di nodi figli.
+	 * 
+	 * @param scansione Scansione posizionata dopo il tag di apertura del Tensore.
+	 * @return Tensore non ancora caricato.
+	 */
+	private static Tensore indicizzaTensore(Scansione scansione) {
+		Tensore tensore = new Tensore();
+		if (scansione.tag_vuoto) {
+			return tensore; // Tag autochiuso: il Tensore non ha contenuto.
+		}
+		List<Integer> inizi = new ArrayList<Integer>();
+		List<Integer> fini = new ArrayList<Integer>();
+		List<Integer> dimensioni = new ArrayList<Integer>();
+		while (scansione.prossimoTag()) {
+			if (scansione.tag_di_chiusura) {
+				if (scansione.tag_corrente.equals(TAG_TENSOR)) {
+					break;
+				}
+			} else {
+				switch (scansione.tag_corrente) {
+				case TAG_NODE:
+					tensore.aggiungiFiglio(indicizzaNodoTensore(scansione, false));
+					break;
+				case TAG_TENSOR:
+					tensore.aggiungiFiglio(indicizzaTensore(scansione));
+					break;
+				case TAG_MATRIX:
+					// Salto la matrice, memorizzandone soltanto l'intervallo di byte e il numero di righe
+					inizi.add(scansione.inizio_tag);
+					dimensioni.add(saltaMatrice(scansione));
+					fini.add(scansione.posizione);
+					break;
+				}
+			}
+		}
+		if (!inizi.isEmpty()) {
+			tensore.setCaricatore(creaCaricatore(scansione.mappa, inizi, fini, dimensioni));
+		}
+		return tensore;
+	}
+	
+	/**
+	 * Crea il caricatore che leggerà le matrici di un Tensore dai rispettivi intervalli del file mappato.
+	 * 
+	 * @param sorgente File mappato in memoria.
+	 * @param inizi Offset del primo byte di ciascuna matrice.
+	 * @param fini Offset successivi all'ultimo byte di ciascuna matrice.
+	 * @param dimensioni Numero di righe di ciascuna matrice.
+	 * @return Caricatore delle matrici.
+	 */
+	private static CaricatoreMatrici creaCaricatore(final ByteBuffer sorgente, final List<Integer> inizi, final List<Integer> fini,
+			final List<Integer> dimensioni) {
+		return new CaricatoreMatrici() {
+			@Override
+			public List<Integer> getDimensioni() {
+				return dimensioni;
+			}
+			
+			@Override
+			public List<byte []> getImpronte() {
+				List<byte []> impronte = new ArrayList<byte []>(inizi.size());
+				for (int i = 0; i < inizi.size(); i++) {
+					impronte.add(improntaMatrice(sorgente, inizi.get(i), fini.get(i)));
+				}
+				return impronte;
+			}
+			
+			@Override
+			public List<Matrice> caricaMatrici() {
+				List<Matrice> matrici = new ArrayList<Matrice>(inizi.size());
+				for (int i = 0; i < inizi.size(); i++) {
+					matrici.add(leggiMatrice(sorgente, inizi.get(i), fini.get(i)));
+				}
+				return matrici;
+			}
+		};
+	}
+	
+	/**
+	 * Crea il caricatore che restituisce matrici già lette, di cui è rinviato soltanto il calcolo dei determinanti.
+	 * 
+	 * @param matrici Matrici del Tensore.
+	 * @return Caricatore delle matrici.
+	 */
+	private static CaricatoreMatrici creaCaricatore(final List<Matrice> matrici) {
+		return new CaricatoreMatrici() {
+			@Override
+			public List<Integer> getDimensioni() {
+				List<Integer> dimensioni = new ArrayList<Integer>(matrici.size());
+				for (Matrice m : matrici) {
+					dimensioni.add(m.getDimensione());
+				}
+				return dimensioni;
+			}
+			
+			@Override
+			public List<byte []> getImpronte() {
+				List<byte []> impronte = new ArrayList<byte []>(matrici.size());
+				for (Matrice m : matrici) {
+					impronte.add(m.getImpronta());
+				}
+				return impronte;
+			}
+			
+			@Override
+			public List<Matrice> caricaMatrici() {
+				return matrici;
+			}
+		};
+	}
+	
+	/**
+	 * Metodo che scorre una matrice durante la scansione a byte fino al suo tag di chiusura, senza leggerne le celle.
+	 * 
+	 * @param scansione Scansione posizionata dopo il tag di apertura della matrice.
+	 * @return Numero di righe della matrice.
+	 */
+	private static int saltaMatrice(Scansione scansione) {
+		int numero_righe = 0;
+		if (scansione.tag_vuoto) {
+			return numero_righe;
+		}
+		while (scansione.prossimoTag() && !(scansione.tag_di_chiusura && scansione.tag_corrente.equals(TAG_MATRIX))) {
+			if (!scansione.tag_di_chiusura && scansione.tag_corrente.equals(TAG_ROW)) {
+				numero_righe++;
+			}
+		}
+		return numero_righe;
+	}
+	
+	/**
+	 * Metodo che calcola l'impronta di una matrice a partire dai valori delle celle contenute in un intervallo
+	 * del file mappato, senza costruire la matrice. Il risultato coincide con Matrice.getImpronta() della
+	 * matrice che verrebbe costruita leggendo lo stesso intervallo, per cui non dipende dalla formattazione
+	 * del file. Come leggiMatrice, non modifica lo stato condiviso del parser.
+	 * 
+	 * @param sorgente File mappato in memoria.
+	 * @param inizio Offset del tag di apertura della matrice.
+	 * @param fine Offset successivo al tag di chiusura della matrice.
+	 * @return Impronta della matrice.
+	 */
+	private static byte [] improntaMatrice(ByteBuffer sorgente, int inizio, int fine) {
+		Scansione scansione = new Scansione(sorgente, inizio);
+		Impronta impronta = new Impronta();
+		int numero_elementi = 0, numero_righe = 0;
+		scansione.prossimoTag(); // Tag di apertura della matrice
+		if (!scansione.tag_vuoto) {
+			while (scansione.posizione < fine && scansione.prossimoTag()
+					&& !(scansione.tag_di_chiusura && scansione.tag_corrente.equals(TAG_MATRIX))) {
+				if (!scansione.tag_di_chiusura) {
+					switch (scansione.tag_corrente) {
+					case TAG_ROW:
+						numero_righe++;
+						break;
+					case TAG_COLUMN:
+						String testo = scansione.leggiTesto();
+						if (!testo.isEmpty()) {
+							int valore = Integer.parseInt(testo);
+							if (valore != 0) {
+								impronta.aggiungiElemento(numero_elementi, valore);
+							}
+							numero_elementi++;
+						}
+						break;
+					}
+				}
+			}
+		}
+		return impronta.aggiungiDimensione(numero_righe).calcola();
+	}
+	
+	/**
+	 * Metodo che legge una singola matrice da un intervallo di byte del file mappato, riutilizzando
+	 * il parsing StAX di costruisciMatrice con un reader dedicato. Il metodo non dipende dallo stato di
+	 * alcuna lettura, per cui può essere invocato durante un'altra lettura o da più thread.
+	 * 
+	 * @param sorgente File mappato in memoria.
+	 * @param inizio Offset del tag di apertura della matrice.
+	 * @param fine Offset successivo al tag di chiusura della matrice.
+	 * @return Matrice letta.
+	 * @throws IllegalStateException Se l'intervallo non contiene una matrice valida.
+	 */
+	private static Matrice leggiMatrice(ByteBuffer sorgente, int inizio, int fine) throws IllegalStateException {
+		byte [] contenuto = new byte [fine - inizio];
+		ByteBuffer vista = sorgente.duplicate();
+		vista.position(inizio);
+		vista.get(contenuto);
+		
+		try {
+			XMLStreamReader reader_matrice;
+			synchronized (ParserXML.class) {
+				reader_matrice = FACTORY.createXMLStreamReader(new ByteArrayInputStream(contenuto));
+			}
+			try {
+				while (reader_matrice.hasNext() && reader_matrice.next() != XMLStreamConstants.START_ELEMENT);
+				return costruisciMatrice(reader_matrice);
+			} finally {
+				reader_matrice.close();
+			}
+		} catch (XMLStreamException e) {
+			throw new IllegalStateException(String.format(EXCEPTION_LETTURA_MATRICE, inizio), e);
+		}
+	}
+	
+	/**
+	 * Espande le entità predefinite di XML (&amp;amp; &amp;lt; &amp;gt; &amp;quot; &amp;apos;) e i riferimenti
+	 * numerici a caratteri, come avviene nel testo restituito dal reader StAX. Le entità non riconosciute
+	 * sono lasciate invariate.
+	 */
+	private static String espandiEntita(String testo) {
+		int e_commerciale = testo.indexOf(CHAR_E_COMMERCIALE);
+		if (e_commerciale < 0) {
+			return testo;
+		}
+		StringBuilder risultato = new StringBuilder(testo.length());
+		int copiato = 0;
+		while (e_commerciale >= 0) {
+			int fine = testo.indexOf(CHAR_PUNTO_E_VIRGOLA, e_commerciale);
+			if (fine < 0) {
+				break;
+			}
+			String sostituto = sostitutoEntita(testo.substring(e_commerciale + 1, fine));
+			if (sostituto != null) {
+				risultato.append(testo, copiato, e_commerciale).append(sostituto);
+				copiato = fine + 1;
+			}
+			e_commerciale = testo.indexOf(CHAR_E_COMMERCIALE, (sostituto != null) ? fine + 1 : e_commerciale + 1);
+		}
+		return risultato.append(testo, copiato, testo.length()).toString();
+	}
+	
+	/**
+	 * Restituisce il testo corrispondente al nome di un'entità (senza '&' e ';'), o null se non è riconosciuta.
+	 */
+	private static String sostitutoEntita(String nome) {
+		try {
+			if (nome.startsWith(PREFISSO_CARATTERE_ESADECIMALE)) {
+				return new String(Character.toChars(Integer.parseInt(nome.substring(PREFISSO_CARATTERE_ESADECIMALE.length()), 16)));
+			} else if (nome.startsWith(PREFISSO_CARATTERE_NUMERICO)) {
+				return new String(Character.toChars(Integer.parseInt(nome.substring(PREFISSO_CARATTERE_NUMERICO.length()))));
+			}
+		} catch (IllegalArgumentException e) {
+			return null; // Riferimento numerico non valido (comprende NumberFormatException).
+		}
+		for (String [] entita : ENTITA_PREDEFINITE) {
+			if (entita[0].equals(nome)) {
+				return entita[1];
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Metodo che legge un file in pipeline, utilizzando il numero di thread di calcolo pari ai processori
+	 * disponibili e la capacità di coda predefinita.
+	 * 
+	 * @see #leggiFilePipeline(String, int, int)
+	 */
+	public static NodoTensore leggiFilePipeline(String nome_file) throws FileNotFoundException, XMLStreamException {
+		return leggiFilePipeline(nome_file, Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Metodo che legge un file in pipeline con il numero di thread di calcolo indicato e la capacità di coda predefinita.
+	 * 
+	 * @see #leggiFilePipeline(String, int, int)
+	 */
+	public static NodoTensore leggiFilePipeline(String nome_file, int numero_thread) throws FileNotFoundException, XMLStreamException {
+		return leggiFilePipeline(nome_file, numero_thread, CAPACITA_CODA_DEFAULT);
+	}
+	
+	/**
+	 * Metodo che legge un file sovrapponendo la lettura al calcolo dei determinanti.
+	 * Il thread chiamante effettua il parsing e, per ogni matrice letta, la aggiunge al suo Tensore e
+	 * inserisce il calcolo del determinante in una coda limitata, da cui attinge un gruppo di thread di calcolo.
+	 * Quando la coda è piena il parsing si sospende finché i thread di calcolo non la svuotano.
+	 * Ogni Tensore si considera completo quando tutti i suoi determinanti sono stati registrati; al termine
+	 * della lettura le Unità di Tensore dei nodi vengono aggiornate con i valori dei figli.
+	 * Se il calcolo di un determinante fallisce, la lettura si interrompe alla matrice successiva.
+	 * 
+	 * @param nome_file Il nome del File da leggere.
+	 * @param numero_thread Numero di thread dedicati al calcolo dei determinanti.
+	 * @param capacita_coda Numero massimo di matrici in attesa di calcolo.
+	 * @return Radice dell'albero, completamente calcolato.
+	 * @throws FileNotFoundException
+	 * @throws XMLStreamException
+	 * @throws IllegalStateException Se il calcolo di un determinante fallisce o la lettura viene interrotta.
+	 */
+	public static NodoTensore leggiFilePipeline(String nome_file, int numero_thread, int capacita_coda) throws FileNotFoundException, XMLStreamException {
+		ExecutorService esecutore = Executors.newFixedThreadPool(numero_thread);
+		List<Future<Void>> risultati = new ArrayList<Future<Void>>(numero_thread);
+		Lettura lettura = new Lettura(null, null, new ArrayBlockingQueue<LavoroDeterminante>(capacita_coda));
+		boolean completato = false;
+		try {
+			for (int i = 0; i < numero_thread; i++) {
+				risultati.add(esecutore.submit(new ThreadDiCalcolo(lettura)));
+			}
+			NodoTensore root = leggi(nome_file, lettura);
+			
+			// Segnalo la fine del lavoro a ciascun thread e ne attendo la terminazione
+			for (int i = 0; i < numero_thread; i++) {
+				lettura.coda_lavori.put(LavoroDeterminante.FINE);
+			}
+			for (Future<Void> risultato : risultati) {
+				risultato.get();
+			}
+			lettura.verificaErrore();
+			completato = true;
+			
+			if (root != null) {
+				root.getUnitaTensore(); // Propaga le Unità di Tensore dei figli completati
+			}
+			return root;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(EXCEPTION_PIPELINE_INTERROTTA, e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(EXCEPTION_CALCOLO_DETERMINANTE, e.getCause());
+		} finally {
+			if (completato) {
+				esecutore.shutdown();
+			} else {
+				esecutore.shutdownNow(); // Interrompe i thread eventualmente bloccati sulla coda
+			}
+		}
+	}
+	
+	/**
+	 * Aggiunge una matrice al Tensore e ne accoda il calcolo del determinante.
+	 * Se la coda è piena, attende che si liberi un posto.
+	 * 
+	 * @param lettura Stato della lettura in pipeline.
+	 * @param tensore Tensore a cui appartiene la matrice.
+	 * @param matrice Matrice letta.
+	 * @throws IllegalStateException Se il calcolo di un determinante precedente è fallito, o se il thread
+	 * viene interrotto durante l'attesa.
+	 */
+	private static void accodaMatrice(Lettura lettura, Tensore tensore, Matrice matrice) throws IllegalStateException {
+		lettura.verificaErrore();
+		int posizione = tensore.aggiungiMatriceInAttesa(matrice);
+		try {
+			lettura.coda_lavori.put(new LavoroDeterminante(tensore, posizione, matrice));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(EXCEPTION_PIPELINE_INTERROTTA, e);
+		}
+	}
+	
+	/**
+	 * Classe che raccoglie lo stato di una singola lettura: il reader e le modalità richieste dal chiamante.
+	 * Ogni metodo pubblico crea la propria istanza e la passa lungo la discesa ricorsiva, per cui letture
+	 * concorrenti non interferiscono e le modalità di letture diverse non possono combinarsi.
+	 */
+	private static final class Lettura {
+		
+		XMLStreamReader reader;
+		
+		// Gestore a cui registrare i Tensori appena costruiti, null se la memoria non è limitata.
+		final GestoreMemoria gestore_memoria;
+		
+		// Archivio consultato per rinviare i determinanti dei Tensori già valutati, null se non utilizzato.
+		final ArchivioValutazioni archivio_valutazioni;
+		
+		/*
+		 * Coda verso i thread di calcolo, utilizzata solo durante la lettura in pipeline.
+		 * Se null, i determinanti sono calcolati direttamente dal thread di lettura.
+		 */
+		final BlockingQueue<LavoroDeterminante> coda_lavori;
+		
+		// Primo errore dei thread di calcolo, null se non se ne sono verificati.
+		private volatile RuntimeException errore;
+		
+		Lettura(GestoreMemoria _gestore_memoria, ArchivioValutazioni _archivio_valutazioni, BlockingQueue<LavoroDeterminante> _coda_lavori) {
+			this.gestore_memoria = _gestore_memoria;
+			this.archivio_valutazioni = _archivio_valutazioni;
+			this.coda_lavori = _coda_lavori;
+		}
+		
+		/**
+		 * Registra l'errore di un thread di calcolo, se è il primo.
+		 */
+		synchronized void segnalaErrore(RuntimeException e) {
+			if (this.errore == null) {
+				this.errore = e;
+			}
+		}
+		
+		/**
+		 * Indica se un thread di calcolo ha segnalato un errore.
+		 */
+		boolean isFallita() {
+			return this.errore != null;
+		}
+		
+		/**
+		 * Rilancia l'errore di un thread di calcolo, se se ne è verificato uno.
+		 * 
+		 * @throws IllegalStateException Se il calcolo di un determinante è fallito.
+		 */
+		void verificaErrore() throws IllegalStateException {
+			RuntimeException e = this.errore;
+			if (e != null) {
+				throw new IllegalStateException(EXCEPTION_CALCOLO_DETERMINANTE, e);
+			}
+		}
+	}
+	
+	/**
+	 * Classe che descrive il calcolo di un determinante da effettuare: la matrice, il Tensore a cui
+	 * appartiene e la sua posizione al suo interno.
+	 */
+	private static final class LavoroDeterminante {
+		
+		/** Lavoro fittizio che segnala ai thread di calcolo la fine della lettura. */
+		static final LavoroDeterminante FINE = new LavoroDeterminante(null, -1, null);
+		
+		final Tensore tensore;
+		final int posizione;
+		final Matrice matrice;
+		
+		LavoroDeterminante(Tensore _tensore, int _posizione, Matrice _matrice) {
+			this.tensore = _tensore;
+			this.posizione = _posizione;
+			this.matrice = _matrice;
+		}
+	}
+	
+	/**
+	 * Classe che rappresenta un thread di calcolo: preleva i lavori dalla coda finché non riceve il
+	 * segnale di fine, e registra ciascun determinante nel rispettivo Tensore.
+	 * In caso di errore il thread lo segnala subito alla lettura, che si interrompe alla matrice successiva;
+	 * i thread continuano a svuotare la coda senza calcolare, così da non bloccare il thread di lettura.
+	 * Ogni matrice prelevata è comunque conteggiata dal suo Tensore come terminata.
+	 */
+	private static final class ThreadDiCalcolo implements Callable<Void> {
+		
+		private final Lettura lettura;
+		
+		ThreadDiCalcolo(Lettura _lettura) {
+			this.lettura = _lettura;
+		}
+		
+		@Override
+		public Void call() throws InterruptedException {
+			LavoroDeterminante lavoro = this.lettura.coda_lavori.take();
+			while (lavoro != LavoroDeterminante.FINE) {
+				try {
+					if (this.lettura.isFallita()) {
+						lavoro.tensore.abbandonaDeterminante();
+					} else {
+						lavoro.tensore.calcolaDeterminanteInAttesa(lavoro.posizione, lavoro.matrice);
+					}
+				} catch (RuntimeException e) {
+					this.lettura.segnalaErrore(e);
+				}
+				lavoro = this.lettura.coda_lavori.take();
+			}
+			return null;
+		}
+	}
+	
+	/**
+	 * Classe che rappresenta lo stato della scansione a byte di un file mappato, utilizzata dal caricamento
+	 * pigro. Ogni lettura crea la propria istanza, per cui letture diverse non interferiscono fra loro.
+	 * Dopo ogni chiamata a prossimoTag() descrive l'ultimo tag letto: nome (minuscolo), tipo, e offset
+	 * del suo primo carattere.
+	 */
+	private static final class Scansione {
+		
+		final ByteBuffer mappa;
+		int posizione;
+		String tag_corrente;
+		boolean tag_di_chiusura;
+		boolean tag_vuoto; // Tag autochiuso (<tag/>), che non ha né contenuto né tag di chiusura.
+		int inizio_tag;
+		
+		Scansione(ByteBuffer _mappa) {
+			this(_mappa, 0);
+		}
+		
+		/**
+		 * Costruttore che inizia la scansione dall'offset indicato, ad esempio dall'inizio di una matrice già indicizzata.
+		 */
+		Scansione(ByteBuffer _mappa, int _posizione) {
+			this.mappa = _mappa;
+			this.posizione = _posizione;
+		}
+		
+		/**
+		 * Metodo che avanza la scansione fino al prossimo tag di apertura o chiusura, saltando
+		 * dichiarazioni, istruzioni di elaborazione, commenti e sezioni CDATA, e ne aggiorna la descrizione.
+		 * 
+		 * @return FALSE se il file è terminato.
+		 */
+		boolean prossimoTag() {
+			int limite = mappa.limit();
+			while (posizione < limite) {
+				if (mappa.get(posizione) != CHAR_APERTURA_TAG) {
+					posizione++;
+					continue;
+				}
+				if (this.saltaMarcatura()) {
+					continue;
+				}
+				if (this.coincide(posizione, INIZIO_CDATA)) {
+					posizione = this.dopo(posizione + INIZIO_CDATA.length, FINE_CDATA);
+					continue;
+				}
+				inizio_tag = posizione;
+				posizione++;
+				byte primo = mappa.get(posizione);
+				tag_di_chiusura = primo == CHAR_SLASH;
+				if (tag_di_chiusura) {
+					posizione++;
+				}
+				int inizio_nome = posizione;
+				while (posizione < limite && mappa.get(posizione) > ' ' && mappa.get(posizione) != CHAR_SLASH
+						&& mappa.get(posizione) != CHAR_CHIUSURA_TAG) {
+					posizione++;
+				}
+				tag_corrente = leggiStringa(inizio_nome, posizione).toLowerCase();
+				while (posizione < limite && mappa.get(posizione) != CHAR_CHIUSURA_TAG) {
+					posizione++;
+				}
+				tag_vuoto = !tag_di_chiusura && mappa.get(posizione - 1) == CHAR_SLASH;
+				posizione++;
+				return true;
+			}
+			return false;
+		}
+		
+		/**
+		 * Legge il testo che segue l'ultimo tag letto, fino al tag successivo, con le entità espanse e
+		 * privo degli spazi iniziali e finali. Se l'ultimo tag è autochiuso il testo è vuoto.
+		 * Come nel testo restituito dal reader StAX, il contenuto delle sezioni CDATA è incluso senza espandere
+		 * le entità, mentre commenti e istruzioni di elaborazione sono ignorati.
+		 */
+		String leggiTesto() {
+			if (tag_vuoto) {
+				return "";
+			}
+			StringBuilder testo = new StringBuilder();
+			int limite = mappa.limit();
+			while (posizione < limite) {
+				int inizio = posizione;
+				while (posizione < limite && mappa.get(posizione) != CHAR_APERTURA_TAG) {
+					posizione++;
+				}
+				testo.append(espandiEntita(leggiStringa(inizio, posizione)));
+				if (this.coincide(posizione, INIZIO_CDATA)) {
+					int inizio_contenuto = posizione + INIZIO_CDATA.length;
+					posizione = this.dopo(inizio_contenuto, FINE_CDATA);
+					testo.append(leggiStringa(inizio_contenuto, Math.max(inizio_contenuto, posizione - FINE_CDATA.length)));
+				} else if (posizione >= limite || !this.saltaMarcatura()) {
+					break; // Tag successivo
+				}
+			}
+			return testo.toString().trim();
+		}
+		
+		/**
+		 * Se alla posizione corrente inizia un commento, un'istruzione di elaborazione o una dichiarazione
+		 * (diversa da una sezione CDATA), la salta.
+		 * 
+		 * @return TRUE se è stato saltato qualcosa.
+		 */
+		private boolean saltaMarcatura() {
+			if (this.coincide(posizione, INIZIO_COMMENTO)) {
+				posizione = this.dopo(posizione + INIZIO_COMMENTO.length, FINE_COMMENTO);
+				return true;
+			}
+			if (posizione + 1 >= mappa.limit()) {
+				return false;
+			}
+			byte primo = mappa.get(posizione + 1);
+			if (primo == CHAR_PUNTO_DOMANDA) {
+				posizione = this.dopo(posizione + 2, FINE_ISTRUZIONE);
+				return true;
+			}
+			if (primo == CHAR_PUNTO_ESCLAMATIVO && !this.coincide(posizione, INIZIO_CDATA)) {
+				while (posizione < mappa.limit() && mappa.get(posizione) != CHAR_CHIUSURA_TAG) {
+					posizione++;
+				}
+				posizione++;
+				return true;
+			}
+			return false;
+		}
+		
+		/**
+		 * Indica se i byte a partire dalla posizione indicata coincidono con la sequenza.
+		 */
+		private boolean coincide(int inizio, byte [] sequenza) {
+			if (inizio + sequenza.length > mappa.limit()) {
+				return false;
+			}
+			for (int i = 0; i < sequenza.length; i++) {
+				if (mappa.get(inizio + i) != sequenza[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+		
+		/**
+		 * Restituisce la posizione successiva alla prima occorrenza della sequenza a partire da quella indicata,
+		 * oppure la fine del file se la sequenza non compare.
+		 */
+		private int dopo(int inizio, byte [] sequenza) {
+			for (int p = inizio; p + sequenza.length <= mappa.limit(); p++) {
+				if (this.coincide(p, sequenza)) {
+					return p + sequenza.length;
+				}
+			}
+			return mappa.limit();
+		}
+		
+		/**
+		 * Converte un intervallo di byte del file mappato in una stringa.
+		 */
+		private String leggiStringa(int inizio, int fine) {
+			byte [] contenuto = new byte [fine - inizio];
+			for (int i = 0; i < contenuto.length; i++) {
+				contenuto[i] = mappa.get(inizio + i);
+			}
+			return new String(contenuto, StandardCharsets.UTF_8);
+		}
 	}
 }
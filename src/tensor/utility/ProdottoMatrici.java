@@ -0,0 +1,179 @@
+package tensor.utility;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Classe di utilità per il prodotto di matrici quadrate, rappresentate come array bidimensionali di double.
+ *
+ * Il prodotto è calcolato a blocchi, in modo che le porzioni delle matrici su cui si lavora restino nella
+ * cache del processore; all'interno di ogni blocco vengono aggiornate due righe del risultato per volta,
+ * così che ogni elemento letto dalla seconda matrice venga riutilizzato dai registri. Per matrici grandi
+ * le righe del risultato sono suddivise fra più thread con il framework fork/join.
+ *
+ * @author Michele Dusi <michele.dusi.it@ieee.org>
+ *
+ */
+public final class ProdottoMatrici {
+
+	private static final int DIM_BLOCCO = 64; // Lato dei blocchi: tre blocchi di double occupano circa 96KB.
+	private static final int SOGLIA_PARALLELA = 128; // Dimensione minima per suddividere il prodotto fra più thread.
+
+	private static final String EXCEPTION_DIMENSIONI_DIVERSE = "Non è possibile moltiplicare matrici di dimensione %d e %d.";
+	private static final String EXCEPTION_CATENA_VUOTA = "La catena di matrici da moltiplicare è vuota.";
+
+	private ProdottoMatrici() {};
+
+	/**
+	 * Metodo che calcola il prodotto fra due matrici quadrate della stessa dimensione.
+	 *
+	 * @param a Primo fattore.
+	 * @param b Secondo fattore.
+	 * @return Prodotto a * b.
+	 * @throws IllegalArgumentException Se le dimensioni delle matrici non coincidono.
+	 */
+	public static double [][] moltiplica(double [][] a, double [][] b) throws IllegalArgumentException {
+		if (a.length != b.length) {
+			throw new IllegalArgumentException(String.format(EXCEPTION_DIMENSIONI_DIVERSE, a.length, b.length));
+		}
+		double [][] c = new double [a.length][a.length];
+		if (a.length >= SOGLIA_PARALLELA) {
+			ForkJoinPool.commonPool().invoke(new ProdottoRighe(a, b, c, 0, a.length));
+		} else {
+			moltiplicaRighe(a, b, c, 0, a.length);
+		}
+		return c;
+	}
+
+	/**
+	 * Metodo che calcola il prodotto di una catena di matrici quadrate, nell'ordine dato.
+	 * Poiché tutte le matrici hanno la stessa dimensione, ogni parentesizzazione ha lo stesso costo: la catena
+	 * viene quindi divisa a metà ricorsivamente, in modo che i prodotti delle due metà (indipendenti fra loro)
+	 * possano essere calcolati in parallelo anche quando le singole matrici sono troppo piccole per
+	 * suddividere il singolo prodotto.
+	 *
+	 * @param catena Matrici da moltiplicare.
+	 * @return Prodotto di tutte le matrici.
+	 * @throws IllegalArgumentException Se la catena è vuota o le dimensioni non coincidono.
+	 */
+	public static double [][] moltiplicaCatena(List<double [][]> catena) throws IllegalArgumentException {
+		if (catena.isEmpty()) {
+			throw new IllegalArgumentException(EXCEPTION_CATENA_VUOTA);
+		}
+		if (catena.size() == 1) {
+			// Restituisco una copia, per non condividere l'array con la matrice originale
+			double [][] copia = new double [catena.get(0).length][];
+			for (int i = 0; i < copia.length; i++) {
+				copia[i] = catena.get(0)[i].clone();
+			}
+			return copia;
+		}
+		return ForkJoinPool.commonPool().invoke(new ProdottoCatena(catena, 0, catena.size()));
+	}
+
+	/**
+	 * Metodo che calcola le righe [inizio, fine) del prodotto c = a * b, a blocchi.
+	 * Il ciclo più interno scorre le righe di b e c in modo sequenziale, mentre due righe di a sono
+	 * elaborate insieme per dimezzare le letture di b.
+	 */
+	private static void moltiplicaRighe(double [][] a, double [][] b, double [][] c, int inizio, int fine) {
+		int n = a.length;
+		for (int ii = inizio; ii < fine; ii += DIM_BLOCCO) {
+			int fine_i = Math.min(ii + DIM_BLOCCO, fine);
+			for (int kk = 0; kk < n; kk += DIM_BLOCCO) {
+				int fine_k = Math.min(kk + DIM_BLOCCO, n);
+				for (int jj = 0; jj < n; jj += DIM_BLOCCO) {
+					int fine_j = Math.min(jj + DIM_BLOCCO, n);
+					int i = ii;
+					for (; i + 1 < fine_i; i += 2) {
+						double [] c0 = c[i], c1 = c[i + 1];
+						double [] a0 = a[i], a1 = a[i + 1];
+						for (int k = kk; k < fine_k; k++) {
+							double x0 = a0[k], x1 = a1[k];
+							double [] bk = b[k];
+							for (int j = jj; j < fine_j; j++) {
+								c0[j] += x0 * bk[j];
+								c1[j] += x1 * bk[j];
+							}
+						}
+					}
+					if (i < fine_i) {
+						// Riga rimanente se il blocco ha un numero dispari di righe
+						double [] ci = c[i], ai = a[i];
+						for (int k = kk; k < fine_k; k++) {
+							double x = ai[k];
+							double [] bk = b[k];
+							for (int j = jj; j < fine_j; j++) {
+								ci[j] += x * bk[j];
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sottoproblema fork/join: calcola un intervallo di righe del prodotto, dividendolo a metà
+	 * finché non è grande quanto un blocco.
+	 */
+	private static final class ProdottoRighe extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final double [][] a, b, c;
+		private final int inizio, fine;
+
+		ProdottoRighe(double [][] _a, double [][] _b, double [][] _c, int _inizio, int _fine) {
+			this.a = _a;
+			this.b = _b;
+			this.c = _c;
+			this.inizio = _inizio;
+			this.fine = _fine;
+		}
+
+		@Override
+		protected void compute() {
+			if (fine - inizio <= DIM_BLOCCO) {
+				moltiplicaRighe(a, b, c, inizio, fine);
+			} else {
+				// Divido mantenendo i confini dei blocchi
+				int meta = inizio + ((fine - inizio) / 2 + DIM_BLOCCO - 1) / DIM_BLOCCO * DIM_BLOCCO;
+				invokeAll(new ProdottoRighe(a, b, c, inizio, meta), new ProdottoRighe(a, b, c, meta, fine));
+			}
+		}
+	}
+
+	/**
+	 * Sottoproblema fork/join: calcola il prodotto delle matrici [inizio, fine) di una catena.
+	 */
+	private static final class ProdottoCatena extends RecursiveTask<double [][]> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<double [][]> catena;
+		private final int inizio, fine;
+
+		ProdottoCatena(List<double [][]> _catena, int _inizio, int _fine) {
+			this.catena = _catena;
+			this.inizio = _inizio;
+			this.fine = _fine;
+		}
+
+		@Override
+		protected double [][] compute() {
+			if (fine - inizio == 1) {
+				return catena.get(inizio); // I fattori non vengono mai modificati, per cui non occorre copiarli.
+			}
+			int meta = (inizio + fine) / 2;
+			ProdottoCatena sinistra = new ProdottoCatena(catena, inizio, meta);
+			ProdottoCatena destra = new ProdottoCatena(catena, meta, fine);
+			sinistra.fork();
+			double [][] prodotto_destra = destra.compute();
+			return moltiplica(sinistra.join(), prodotto_destra);
+		}
+	}
+
+}
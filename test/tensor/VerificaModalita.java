@@ -0,0 +1,87 @@
+package tensor;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.xml.stream.XMLStreamException;
+
+import tensor.distribuito.Coordinatore;
+import tensor.tree.AlberoCompatto;
+import tensor.tree.ArchivioValutazioni;
+import tensor.tree.GestoreMemoria;
+import tensor.tree.NodoTensore;
+import tensor.utility.ParserXML;
+
+/**
+ * Verifica ripetibile che tutte le modalità di lettura e valutazione di un file producano gli stessi indici
+ * e le stesse Unità di Tensore della lettura completa: lettura pigra, pipeline, rappresentazione compatta,
+ * archivio delle valutazioni (sia al primo calcolo sia al riutilizzo), budget di memoria nullo e
+ * valutazione distribuita. Il confronto è fra le stringhe stampate, per cui deve essere esatto.
+ *
+ * Avvio: java -cp bin tensor.VerificaModalita [file]
+ * Termina con un'eccezione alla prima discordanza.
+ *
+ * @author Michele Dusi <michele.dusi.it@ieee.org>
+ *
+ */
+public final class VerificaModalita {
+
+	private static final String FILE_DEFAULT = "input_0.xml";
+	private static final int THREAD_PIPELINE = 1;
+	private static final int CAPACITA_PIPELINE = 1; // Coda minima: il parser attende ad ogni matrice.
+	private static final int PROCESSI = 2;
+
+	private static final String ERRORE_DISCORDANZA = "La modalità \"%s\" non concorda con la lettura completa (%s).";
+	private static final String ERRORE_RIUTILIZZO = "L'archivio non ha riutilizzato le valutazioni della prima lettura.";
+	private static final String STRING_ESITO = "Tutte le modalità concordano sul file \"%s\".";
+
+	private VerificaModalita() {};
+
+	public static void main(String[] args) throws IOException, XMLStreamException {
+		String file = (args.length > 0) ? args[0] : FILE_DEFAULT;
+		NodoTensore riferimento = ParserXML.leggiFile(file);
+		List<String> indici = riferimento.getListaIndici();
+		List<String> unita = riferimento.getListaUnita();
+
+		NodoTensore pigro = ParserXML.leggiFileLazy(file);
+		confronta("pigra", indici, unita, pigro.getListaIndici(), pigro.getListaUnita());
+
+		NodoTensore pipeline = ParserXML.leggiFilePipeline(file);
+		confronta("pipeline", indici, unita, pipeline.getListaIndici(), pipeline.getListaUnita());
+		pipeline = ParserXML.leggiFilePipeline(file, THREAD_PIPELINE, CAPACITA_PIPELINE);
+		confronta("pipeline con coda minima", indici, unita, pipeline.getListaIndici(), pipeline.getListaUnita());
+
+		AlberoCompatto compatto = AlberoCompatto.da(ParserXML.leggiFile(file));
+		confronta("compatta", indici, unita, compatto.getListaIndici(), compatto.getListaUnita());
+
+		ArchivioValutazioni archivio = new ArchivioValutazioni();
+		NodoTensore prima_lettura = ParserXML.leggiFile(file, archivio);
+		confronta("archivio, primo calcolo", indici, unita, archivio.getListaIndici(prima_lettura), archivio.getListaUnita(prima_lettura));
+		NodoTensore seconda_lettura = ParserXML.leggiFileLazy(file);
+		int calcolati = archivio.getSottoalberiCalcolati();
+		confronta("archivio, riutilizzo", indici, unita, archivio.getListaIndici(seconda_lettura), archivio.getListaUnita(seconda_lettura));
+		if (archivio.getSottoalberiCalcolati() != calcolati) {
+			throw new IllegalStateException(ERRORE_RIUTILIZZO);
+		}
+
+		try (GestoreMemoria gestore = new GestoreMemoria(0)) {
+			NodoTensore su_disco = ParserXML.leggiFile(file, gestore);
+			confronta("budget di memoria nullo", indici, unita, su_disco.getListaIndici(), su_disco.getListaUnita());
+		}
+
+		Coordinatore.Risultato distribuito = new Coordinatore(PROCESSI).valuta(ParserXML.leggiFileLazy(file));
+		confronta("distribuita", indici, unita, distribuito.getListaIndici(), distribuito.getListaUnita());
+
+		System.out.println(String.format(STRING_ESITO, file));
+	}
+
+	private static void confronta(String modalita, List<String> indici, List<String> unita, List<String> altri_indici, List<String> altre_unita) {
+		if (!altri_indici.equals(indici)) {
+			throw new IllegalStateException(String.format(ERRORE_DISCORDANZA, modalita, "indici"));
+		}
+		if (!altre_unita.equals(unita)) {
+			throw new IllegalStateException(String.format(ERRORE_DISCORDANZA, modalita, "Unità di Tensore"));
+		}
+	}
+
+}
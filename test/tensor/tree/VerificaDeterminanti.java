@@ -0,0 +1,227 @@
+package tensor.tree;
+
+import java.util.Random;
+
+import tensor.utility.MathUtility.AlgoritmoPerDeterminante;
+import tensor.utility.MathUtility.ValoreLogaritmico;
+
+/**
+ * Verifica ripetibile che tutti i modi di calcolare un determinante concordino: gli algoritmi espliciti
+ * (Gauss, Sarrus, Laplace), la scelta automatica per struttura (diagonale, triangolare, a banda, Cholesky),
+ * le rappresentazioni intera e sparsa e il calcolo logaritmico.
+ * Il riferimento è l'eliminazione di Gauss sulla matrice densa. La tolleranza è relativa alla disuguaglianza
+ * di Hadamard (prodotto delle norme delle righe), così da accettare gli errori di arrotondamento anche
+ * sulle matrici singolari, il cui determinante calcolato è solo prossimo allo zero.
+ *
+ * Avvio: java -cp bin tensor.tree.VerificaDeterminanti
+ * Termina con un'eccezione alla prima discordanza.
+ *
+ * @author Michele Dusi <michele.dusi.it@ieee.org>
+ *
+ */
+public final class VerificaDeterminanti {
+
+	private static final long SEME = 26;
+	private static final int MAX_DIM = 40;
+	private static final int MAX_VALORE = 100;
+	private static final int DIM_OVERFLOW = 150; // Dimensione per cui il determinante eccede il range di un double.
+	private static final double TOLLERANZA = 1E-9;
+	private static final double DENSITA_SPARSA = 0.1;
+
+	// Forme delle matrici generate
+	private static final int FORMA_DIAGONALE = 0;
+	private static final int FORMA_TRIANGOLARE_SUPERIORE = 1;
+	private static final int FORMA_TRIANGOLARE_INFERIORE = 2;
+	private static final int FORMA_TRIDIAGONALE = 3;
+	private static final int FORMA_PENTADIAGONALE = 4;
+	private static final int FORMA_DEFINITA_POSITIVA = 5;
+	private static final int FORMA_SIMMETRICA = 6;
+	private static final int FORMA_GENERICA = 7;
+	private static final int FORMA_SPARSA = 8;
+	private static final int FORMA_SINGOLARE = 9;
+	private static final int NUMERO_FORME = 10;
+
+	private static final String ERRORE_DISCORDANZA = "Forma %d, dimensione %d, %s: %s invece di %s (tolleranza %s).";
+	private static final String ERRORE_OVERFLOW = "Dimensione %d, %s: logaritmo %s invece di %s.";
+	private static final String STRING_ESITO = "Determinanti concordi su %d matrici.";
+
+	private VerificaDeterminanti() {};
+
+	public static void main(String[] args) {
+		Random random = new Random(SEME);
+		int verificate = 0;
+		for (int forma = 0; forma < NUMERO_FORME; forma++) {
+			for (int dim = 1; dim <= MAX_DIM; dim++) {
+				verifica(forma, dim, generaElementi(random, forma, dim));
+				verificate++;
+			}
+		}
+		verificaOverflow(generaElementi(random, FORMA_GENERICA, DIM_OVERFLOW));
+		verificate++;
+		System.out.println(String.format(STRING_ESITO, verificate));
+	}
+
+	/**
+	 * Confronta tutti i calcoli disponibili per la matrice con l'eliminazione di Gauss sulla matrice densa.
+	 */
+	private static void verifica(int forma, int dim, int [] elementi) {
+		Matrice densa = new Matrice(inDouble(dim, elementi));
+		MatriceIntera intera = new MatriceIntera(dim, elementi, tipoPer(elementi));
+		MatriceSparsa sparsa = new MatriceSparsa(dim, elementi);
+		double riferimento = densa.calcolaDeterminante(AlgoritmoPerDeterminante.GAUSS);
+		double tolleranza = TOLLERANZA * limiteHadamard(dim, elementi);
+
+		confronta(forma, dim, "densa AUTOMATICO", densa.calcolaDeterminante(AlgoritmoPerDeterminante.AUTOMATICO), riferimento, tolleranza);
+		if (dim <= AlgoritmoPerDeterminante.getMaxDimMatrice(AlgoritmoPerDeterminante.LAPLACE)) {
+			confronta(forma, dim, "densa LAPLACE", densa.calcolaDeterminante(AlgoritmoPerDeterminante.LAPLACE), riferimento, tolleranza);
+		}
+		if (dim == AlgoritmoPerDeterminante.getMinDimMatrice(AlgoritmoPerDeterminante.SARRUS)) {
+			confronta(forma, dim, "densa SARRUS", densa.calcolaDeterminante(AlgoritmoPerDeterminante.SARRUS), riferimento, tolleranza);
+		}
+		confronta(forma, dim, "intera AUTOMATICO", intera.calcolaDeterminante(), riferimento, tolleranza);
+		confronta(forma, dim, "intera GAUSS", intera.calcolaDeterminante(AlgoritmoPerDeterminante.GAUSS), riferimento, tolleranza);
+		confronta(forma, dim, "sparsa AUTOMATICO", sparsa.calcolaDeterminante(), riferimento, tolleranza);
+		confronta(forma, dim, "sparsa GAUSS", sparsa.calcolaDeterminante(AlgoritmoPerDeterminante.GAUSS), riferimento, tolleranza);
+
+		confronta(forma, dim, "densa logaritmico", densa.calcolaLogDeterminante().getValore(), riferimento, tolleranza);
+		confronta(forma, dim, "intera logaritmico", intera.calcolaLogDeterminante().getValore(), riferimento, tolleranza);
+		confronta(forma, dim, "sparsa logaritmico", sparsa.calcolaLogDeterminante().getValore(), riferimento, tolleranza);
+	}
+
+	/**
+	 * Su una matrice il cui determinante non è rappresentabile come double, confronta i calcoli logaritmici
+	 * delle tre rappresentazioni: devono avere lo stesso segno e lo stesso logaritmo.
+	 */
+	private static void verificaOverflow(int [] elementi) {
+		int dim = DIM_OVERFLOW;
+		ValoreLogaritmico riferimento = new Matrice(inDouble(dim, elementi)).calcolaLogDeterminante();
+		ValoreLogaritmico intero = new MatriceIntera(dim, elementi, tipoPer(elementi)).calcolaLogDeterminante();
+		ValoreLogaritmico sparso = new MatriceSparsa(dim, elementi).calcolaLogDeterminante();
+		if (!Double.isInfinite(riferimento.getValore())) {
+			throw new IllegalStateException(String.format(ERRORE_OVERFLOW, dim, "densa", riferimento, "un valore non rappresentabile"));
+		}
+		confrontaLogaritmi(dim, "intera", intero, riferimento);
+		confrontaLogaritmi(dim, "sparsa", sparso, riferimento);
+	}
+
+	private static void confronta(int forma, int dim, String calcolo, double valore, double riferimento, double tolleranza) {
+		if (!(Math.abs(valore - riferimento) <= tolleranza)) {
+			throw new IllegalStateException(String.format(ERRORE_DISCORDANZA, forma, dim, calcolo, valore, riferimento, tolleranza));
+		}
+	}
+
+	private static void confrontaLogaritmi(int dim, String calcolo, ValoreLogaritmico valore, ValoreLogaritmico riferimento) {
+		if (valore.getSegno() != riferimento.getSegno()
+				|| !(Math.abs(valore.getLogaritmo() - riferimento.getLogaritmo()) <= TOLLERANZA * Math.abs(riferimento.getLogaritmo()))) {
+			throw new IllegalStateException(String.format(ERRORE_OVERFLOW, dim, calcolo, valore, riferimento));
+		}
+	}
+
+	/**
+	 * Genera gli elementi, in ordine di riga, di una matrice della forma indicata.
+	 */
+	private static int [] generaElementi(Random random, int forma, int dim) {
+		int [] elementi = new int [dim * dim];
+		for (int i = 0; i < dim; i++) {
+			for (int j = 0; j < dim; j++) {
+				boolean presente;
+				switch (forma) {
+				case FORMA_DIAGONALE:
+					presente = i == j;
+					break;
+				case FORMA_TRIANGOLARE_SUPERIORE:
+					presente = j >= i;
+					break;
+				case FORMA_TRIANGOLARE_INFERIORE:
+					presente = j <= i;
+					break;
+				case FORMA_TRIDIAGONALE:
+					presente = Math.abs(i - j) <= 1;
+					break;
+				case FORMA_PENTADIAGONALE:
+					presente = Math.abs(i - j) <= 2;
+					break;
+				case FORMA_SPARSA:
+					presente = i == j || random.nextDouble() < DENSITA_SPARSA;
+					break;
+				default:
+					presente = true;
+				}
+				elementi[i * dim + j] = presente ? valoreCasuale(random) : 0;
+			}
+		}
+		switch (forma) {
+		case FORMA_DEFINITA_POSITIVA:
+			return definitaPositiva(dim, elementi);
+		case FORMA_SIMMETRICA:
+			for (int i = 0; i < dim; i++) {
+				for (int j = 0; j < i; j++) {
+					elementi[i * dim + j] = elementi[j * dim + i];
+				}
+			}
+			break;
+		case FORMA_SINGOLARE:
+			if (dim > 1) {
+				System.arraycopy(elementi, 0, elementi, (dim - 1) * dim, dim); // Ultima riga uguale alla prima
+			}
+			break;
+		}
+		return elementi;
+	}
+
+	/**
+	 * Restituisce B^T B + dim I, definita positiva, a partire da una matrice B con elementi piccoli.
+	 */
+	private static int [] definitaPositiva(int dim, int [] b) {
+		int [] elementi = new int [dim * dim];
+		for (int i = 0; i < dim; i++) {
+			for (int j = 0; j < dim; j++) {
+				int somma = (i == j) ? dim : 0;
+				for (int k = 0; k < dim; k++) {
+					somma += (b[k * dim + i] % 10) * (b[k * dim + j] % 10);
+				}
+				elementi[i * dim + j] = somma;
+			}
+		}
+		return elementi;
+	}
+
+	private static int valoreCasuale(Random random) {
+		return random.nextInt(2 * MAX_VALORE + 1) - MAX_VALORE;
+	}
+
+	private static double [][] inDouble(int dim, int [] elementi) {
+		double [][] matrice = new double [dim][dim];
+		for (int i = 0; i < dim; i++) {
+			for (int j = 0; j < dim; j++) {
+				matrice[i][j] = elementi[i * dim + j];
+			}
+		}
+		return matrice;
+	}
+
+	private static MatriceIntera.TipoElementi tipoPer(int [] elementi) {
+		int minimo = 0, massimo = 0;
+		for (int x : elementi) {
+			minimo = Math.min(minimo, x);
+			massimo = Math.max(massimo, x);
+		}
+		return MatriceIntera.TipoElementi.perIntervallo(minimo, massimo);
+	}
+
+	/**
+	 * Restituisce il prodotto delle norme delle righe, che limita il valore assoluto del determinante.
+	 */
+	private static double limiteHadamard(int dim, int [] elementi) {
+		double limite = 1;
+		for (int i = 0; i < dim; i++) {
+			double norma = 0;
+			for (int j = 0; j < dim; j++) {
+				norma += (double) elementi[i * dim + j] * elementi[i * dim + j];
+			}
+			limite *= Math.sqrt(norma);
+		}
+		return limite;
+	}
+
+}
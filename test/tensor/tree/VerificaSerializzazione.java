@@ -0,0 +1,163 @@
+package tensor.tree;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import javax.xml.stream.XMLStreamException;
+
+import tensor.utility.ParserXML;
+
+/**
+ * Verifica ripetibile della serializzazione usata dalla valutazione distribuita e dal GestoreMemoria.
+ * Ogni matrice e ogni albero vengono scritti e riletti: il risultato deve avere la stessa rappresentazione,
+ * la stessa impronta e la stessa valutazione dell'originale.
+ * Gli alberi verificati sono uno costruito qui, con matrici dense, intere e sparse, e quello del file indicato
+ * (predefinito: input_0.xml), letto in modalità completa, pigra e con le matrici spostate su disco.
+ *
+ * Avvio: java -cp bin tensor.tree.VerificaSerializzazione [file]
+ * Termina con un'eccezione alla prima discordanza.
+ *
+ * @author Michele Dusi <michele.dusi.it@ieee.org>
+ *
+ */
+public final class VerificaSerializzazione {
+
+	private static final String FILE_DEFAULT = "input_0.xml";
+	private static final long SEME = 34;
+	private static final int DIM = 6;
+
+	private static final String ERRORE_MATRICE = "La matrice %s riletta non coincide con l'originale (%s).";
+	private static final String ERRORE_ALBERO = "L'albero \"%s\" riletto non coincide con l'originale (%s).";
+	private static final String STRING_ESITO = "Serializzazione verificata su %d matrici e %d alberi.";
+
+	private VerificaSerializzazione() {};
+
+	public static void main(String[] args) throws IOException, XMLStreamException {
+		String file = (args.length > 0) ? args[0] : FILE_DEFAULT;
+		Random random = new Random(SEME);
+
+		List<Matrice> matrici = Arrays.asList(
+				new Matrice(inDouble(elementiCasuali(random, 100))),
+				new MatriceIntera(DIM, elementiCasuali(random, Byte.MAX_VALUE), MatriceIntera.TipoElementi.BYTE),
+				new MatriceIntera(DIM, elementiCasuali(random, Short.MAX_VALUE), MatriceIntera.TipoElementi.SHORT),
+				new MatriceIntera(DIM, elementiCasuali(random, 1 << 20), MatriceIntera.TipoElementi.INT),
+				new MatriceSparsa(DIM, elementiDiagonali(random)));
+		for (Matrice m : matrici) {
+			verificaMatrice(m);
+		}
+
+		String [] alberi = {"costruito", "completo", "pigro", "su disco"};
+		verificaAlbero(alberi[0], costruisciAlbero(matrici));
+		verificaAlbero(alberi[1], ParserXML.leggiFile(file));
+		verificaAlbero(alberi[2], ParserXML.leggiFileLazy(file));
+		try (GestoreMemoria gestore = new GestoreMemoria(0)) {
+			verificaAlbero(alberi[3], ParserXML.leggiFile(file, gestore));
+		}
+		System.out.println(String.format(STRING_ESITO, matrici.size(), alberi.length));
+	}
+
+	/**
+	 * Scrive e rilegge il record di una matrice.
+	 */
+	private static void verificaMatrice(Matrice originale) {
+		ByteBuffer record = SerializzatoreAlbero.serializzaMatrice(originale);
+		int lunghezza = record.getInt();
+		if (lunghezza != record.remaining()) {
+			throw new IllegalStateException(String.format(ERRORE_MATRICE, originale.getClass().getSimpleName(), "lunghezza del record"));
+		}
+		Matrice riletta = SerializzatoreAlbero.deserializzaMatrice(record);
+		if (riletta.getClass() != originale.getClass()) {
+			throw new IllegalStateException(String.format(ERRORE_MATRICE, originale.getClass().getSimpleName(), riletta.getClass().getSimpleName()));
+		}
+		if (originale instanceof MatriceIntera && ((MatriceIntera) riletta).getTipo() != ((MatriceIntera) originale).getTipo()) {
+			throw new IllegalStateException(String.format(ERRORE_MATRICE, originale.getClass().getSimpleName(), "tipo degli elementi"));
+		}
+		if (!Arrays.equals(riletta.getImpronta(), originale.getImpronta())) {
+			throw new IllegalStateException(String.format(ERRORE_MATRICE, originale.getClass().getSimpleName(), "impronta"));
+		}
+		if (Double.compare(riletta.calcolaDeterminante(), originale.calcolaDeterminante()) != 0) {
+			throw new IllegalStateException(String.format(ERRORE_MATRICE, originale.getClass().getSimpleName(), "determinante"));
+		}
+	}
+
+	/**
+	 * Scrive e rilegge un albero, confrontandone impronta, costo stimato e valutazione.
+	 * La stima del costo è fatta prima della scrittura, quando un albero pigro non è ancora stato letto.
+	 */
+	private static void verificaAlbero(String nome, NodoTensore originale) throws IOException {
+		long costo = SerializzatoreAlbero.stimaCosto(originale);
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(buffer)) {
+			SerializzatoreAlbero.scrivi(originale, out);
+		}
+		NodoTensore riletto;
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(buffer.toByteArray()))) {
+			riletto = SerializzatoreAlbero.leggi(in);
+			if (in.read() >= 0) {
+				throw new IllegalStateException(String.format(ERRORE_ALBERO, nome, "byte non letti"));
+			}
+		}
+		if (SerializzatoreAlbero.stimaCosto(riletto) != costo) {
+			throw new IllegalStateException(String.format(ERRORE_ALBERO, nome, "costo stimato"));
+		}
+		if (!riletto.getImpronta().equals(originale.getImpronta())) {
+			throw new IllegalStateException(String.format(ERRORE_ALBERO, nome, "impronta"));
+		}
+		if (!riletto.getListaIndici().equals(originale.getListaIndici())) {
+			throw new IllegalStateException(String.format(ERRORE_ALBERO, nome, "indici"));
+		}
+		if (!riletto.getListaUnita().equals(originale.getListaUnita())) {
+			throw new IllegalStateException(String.format(ERRORE_ALBERO, nome, "Unità di Tensore"));
+		}
+	}
+
+	/**
+	 * Costruisce un albero con un Tensore per ciascuna matrice, metà dei quali sotto un nodo intermedio.
+	 */
+	private static NodoTensore costruisciAlbero(List<Matrice> matrici) {
+		NodoTensore radice = new NodoTensore("radice", true);
+		NodoTensore intermedio = new NodoTensore("intermedio");
+		radice.aggiungiFiglio(intermedio);
+		for (int i = 0; i < matrici.size(); i++) {
+			Tensore tensore = new Tensore();
+			tensore.setLabel("tensore" + i);
+			tensore.aggiungiMatrice(matrici.get(i));
+			(i % 2 == 0 ? radice : intermedio).aggiungiFiglio(tensore);
+		}
+		return radice;
+	}
+
+	private static int [] elementiCasuali(Random random, int massimo) {
+		int [] elementi = new int [DIM * DIM];
+		for (int k = 0; k < elementi.length; k++) {
+			elementi[k] = random.nextInt(2 * massimo + 1) - massimo;
+		}
+		return elementi;
+	}
+
+	private static int [] elementiDiagonali(Random random) {
+		int [] elementi = new int [DIM * DIM];
+		for (int i = 0; i < DIM; i++) {
+			elementi[i * DIM + i] = random.nextInt(100) + 1;
+		}
+		return elementi;
+	}
+
+	private static double [][] inDouble(int [] elementi) {
+		double [][] matrice = new double [DIM][DIM];
+		for (int i = 0; i < DIM; i++) {
+			for (int j = 0; j < DIM; j++) {
+				matrice[i][j] = elementi[i * DIM + j];
+			}
+		}
+		return matrice;
+	}
+
+}